@@ -26,7 +26,6 @@ options {
 	
 	import java.util.ArrayList;
 	import java.util.Calendar;
-	import java.util.HashMap;
 	import java.util.List;
 	import java.util.Map;
 	
@@ -34,16 +33,57 @@ options {
 	import com.classactionpl.tz.Rule.TimeOfDayType;
 	import com.classactionpl.tz.Rule.YearType;
 	import com.classactionpl.tz.Rule.YearValueType;
+	import com.classactionpl.tz.ZoneinfoDocument.LinkDeclaration;
+	import com.classactionpl.tz.ZoneinfoDocument.RuleReference;
 }
 
 @members {
-	private Map<String, AbstractZone> zones;
+	private ZoneinfoDocument document = new ZoneinfoDocument();
 	
-	public void setZones(Map<String, AbstractZone> zones) {
-		this.zones = zones;
+	/**
+	 * @return the rules, zones and links walked.
+	 */
+	public ZoneinfoDocument getDocument() {
+		return document;
 	}
 
-	private Map<String, List<Rule>> ruleLists = new HashMap<String, List<Rule>>();
+	private List<RuleReference> forwardRuleReferences = new ArrayList<RuleReference>();
+	
+	/**
+	 * Obtain the rules of a given name for a zone detail. Rules may be walked
+	 * after the details that refer to them, so the list is created upon first
+	 * reference and filled in as the rules are walked.
+	 */
+	private List<Rule> resolveRuleList(String ruleName, ZoneDetail zoneDetail) {
+		Map<String, List<Rule>> ruleLists = document.getRuleLists();
+		List<Rule> rules = ruleLists.get(ruleName);
+		if (rules == null) {
+			rules = new ArrayList<Rule>();
+			ruleLists.put(ruleName, rules);
+		}
+		if (rules.isEmpty()) {
+			forwardRuleReferences.add(new RuleReference(zoneDetail, ruleName));
+		}
+		return rules;
+	}
+	
+	/**
+	 * Hand references to rules that were never walked over to the document,
+	 * leaving the details concerned without rules until the document is
+	 * linked. Call once all of the rules have been walked.
+	 */
+	public void resolveForwardRuleReferences() {
+		Map<String, List<Rule>> ruleLists = document.getRuleLists();
+		for (RuleReference ruleReference : forwardRuleReferences) {
+			ZoneDetail zoneDetail = ruleReference.getDetail();
+			if (zoneDetail.getRules().isEmpty()) {
+				zoneDetail.setRules(null);
+				ruleLists.remove(ruleReference.getRuleName());
+				document.getRuleReferences().add(ruleReference);
+			}
+		}
+		forwardRuleReferences.clear();
+	}
 	
 	enum ZoneRuleType {
 		noRuleOrSave,
@@ -59,6 +99,7 @@ line
 ruleLine
 	: 'Rule' ruleName ruleFrom ruleTo ruleType ruleIn ruleOn ruleAt ruleSave ruleLetters {
 		String ruleName = $ruleName.text;
+		Map<String, List<Rule>> ruleLists = document.getRuleLists();
 		List<Rule> rules = ruleLists.get(ruleName);
 		if (rules == null) {
 			rules = new ArrayList<Rule>();
@@ -99,7 +140,8 @@ scope {
 	ZoneRuleType zoneRuleType;
 }	: 'Zone' zoneName zoneGmtOffset zoneRules zoneFormat zoneUntil? {
 		String zoneName = $zoneName.text;
-		Zone zone = (Zone) zones.get(zoneName);
+		Map<String, Zone> zones = document.getZones();
+		Zone zone = zones.get(zoneName);
 		if (zone == null) {
 			zone = new Zone();
 			zone.setName(zoneName);
@@ -116,11 +158,10 @@ scope {
 			zoneDetail.setSave(0);
 			break;
 		case rule:
-			List<Rule> rules = ruleLists.get($zoneRules.text);
-			zoneDetail.setRules(rules);
+			zoneDetail.setRules(resolveRuleList($zoneRules.text, zoneDetail));
 			break;
 		default:
-			zoneDetail.setSave(Integer.valueOf($zoneRules.text));
+			zoneDetail.setSave($zoneRules.save);
 		}
 		
 		zoneDetail.setFormat($zoneFormat.format);
@@ -139,15 +180,10 @@ scope {
 
 linkLine
 	: 'Link' linkFrom linkTo {
-		String linkFromZoneName = $linkFrom.text;
-		Zone targetZone = (Zone) zones.get(linkFromZoneName);
-		if (targetZone != null) {
-			Link zone = new Link();
-			String zoneName = $linkTo.text;
-			zone.setName(zoneName);
-			zone.setTargetZone(targetZone);
-			zones.put(zoneName, zone);
-		}
+		// Links are resolved once all of the zones of interest have been
+		// walked, so that their targets may be declared anywhere.
+		document.getLinks().add(new LinkDeclaration($linkFrom.text,
+				$linkTo.text));
 	}
 	;
 
@@ -341,12 +377,13 @@ zoneGmtOffset returns [int seconds]
 	: offset {$seconds = $offset.seconds;}
 	;
 	
-zoneRules
+zoneRules returns [int save]
 	: '-' {
 		$zoneLine::zoneRuleType = ZoneRuleType.noRuleOrSave;
 	} 
 	| positiveTime {
 		$zoneLine::zoneRuleType = ZoneRuleType.save;
+		$save = $positiveTime.seconds;
 	} 
 	| ID {
 		$zoneLine::zoneRuleType = ZoneRuleType.rule;
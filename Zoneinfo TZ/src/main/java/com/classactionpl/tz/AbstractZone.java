@@ -35,17 +35,52 @@ import java.util.Date;
  * 
  */
 public abstract class AbstractZone implements Serializable {
+	/**
+	 * How to resolve a local time that occurs either never or more than once
+	 * due to a change in offset.
+	 */
+	public enum LocalTimePolicy {
+		/**
+		 * Resolve to the earlier of the possible times. A local time skipped
+		 * over is interpreted with the offset that follows it.
+		 */
+		earlier,
+		/**
+		 * Resolve to the later of the possible times. A local time skipped
+		 * over is interpreted with the offset that precedes it.
+		 */
+		later,
+		/**
+		 * Refuse to resolve.
+		 */
+		reject
+	}
+
 	/**
 	 * 
 	 */
 	private static final long serialVersionUID = 1L;
 
+	/**
+	 * A bound on how far local time may be from UTC, in milliseconds.
+	 */
+	private static final long MAX_OFFSET_MILLIS = 26L * 60 * 60 * 1000;
+
+	/** */
+	private static final int MILLIS_PER_SECOND = 1000;
+
 	/**
 	 * The name of the time zone. This is the name used in creating the time
 	 * conversion information file for the zone.
 	 */
 	private String name;
 
+	/**
+	 * @return the zone that this zone ultimately describes, being itself for
+	 *         a concrete zone, or null if there is none.
+	 */
+	public abstract Zone getCanonicalZone();
+
 	/**
 	 * @return value.
 	 */
@@ -55,6 +90,81 @@ public abstract class AbstractZone implements Serializable {
 		return name;
 	}
 
+	/**
+	 * @return the compiled transitions of the zone.
+	 */
+	public abstract ZoneTransitions getTransitions();
+
+	/**
+	 * Get the abbreviation in use at a given time.
+	 * 
+	 * @param when
+	 *            the time in milliseconds since the epoch.
+	 * @return the abbreviation or null if there is none.
+	 */
+	public String resolveAbbreviation(long when) {
+		String abbreviation;
+		ZoneTransitions transitions = getTransitions();
+		if (transitions.covers(when)) {
+			abbreviation = transitions.getAbbreviation(transitions
+					.indexOf(when));
+		} else {
+			ZoneDetail detail = resolveDetail(when);
+			if (detail != null) {
+				int save;
+				Rule rule;
+				if (detail.getRules() != null) {
+					rule = detail.resolveRule(when);
+					if (rule != null) {
+						save = rule.getSave();
+					} else {
+						save = 0;
+					}
+				} else {
+					rule = null;
+					save = detail.getSave();
+				}
+				abbreviation = detail.resolveAbbreviation(rule, save != 0);
+			} else {
+				abbreviation = null;
+			}
+		}
+		return abbreviation;
+	}
+
+	/**
+	 * Get the abbreviation for either standard or daylight time, as it is
+	 * given at a certain time.
+	 * 
+	 * @param when
+	 *            the time in milliseconds since the epoch.
+	 * @param daylight
+	 *            whether the daylight time abbreviation is required.
+	 * @return the abbreviation or null if there is none.
+	 */
+	public String resolveAbbreviation(long when, boolean daylight) {
+		String abbreviation;
+		ZoneTransitions transitions = getTransitions();
+		if (transitions.covers(when)) {
+			abbreviation = transitions.getAbbreviation(transitions
+					.indexOf(when), daylight);
+		} else {
+			ZoneDetail detail = resolveDetail(when);
+			if (detail != null) {
+				Rule rule;
+				if (detail.getRules() != null) {
+					rule = detail.resolveRule(when);
+				} else {
+					rule = null;
+				}
+				abbreviation = detail.resolveAbbreviation(rule, daylight);
+			} else {
+				abbreviation = null;
+			}
+		}
+		return abbreviation;
+	}
+
 	/**
 	 * Get a zone detail given a date and time.
 	 * 
@@ -62,7 +172,96 @@ public abstract class AbstractZone implements Serializable {
 	 *            when to return the detail for.
 	 * @return the detail object or null if there is none.
 	 */
-	public abstract ZoneDetail resolveDetail(Date when);
+	public ZoneDetail resolveDetail(Date when) {
+		return resolveDetail(when.getTime());
+	}
+
+	/**
+	 * Get a zone detail given a time in milliseconds since the epoch.
+	 * 
+	 * @param when
+	 *            when to return the detail for.
+	 * @return the detail object or null if there is none.
+	 */
+	public abstract ZoneDetail resolveDetail(long when);
+
+	/**
+	 * Get the time that a local time corresponds to. The local time is
+	 * expressed as the milliseconds since the epoch that a clock in the zone
+	 * would read i.e. the local date and time fields taken as UTC.
+	 * 
+	 * @param localTime
+	 *            the local time.
+	 * @param policy
+	 *            how to resolve local times that are skipped or repeated.
+	 * @return the time in milliseconds since the epoch.
+	 * @throws IllegalArgumentException
+	 *             if the local time is skipped or repeated and the policy is
+	 *             to reject it.
+	 */
+	public long resolveInstant(long localTime, LocalTimePolicy policy) {
+		long earliest = Long.MAX_VALUE;
+		long latest = Long.MIN_VALUE;
+		int offsetBefore;
+		int offsetAfter;
+
+		ZoneTransitions transitions = getTransitions();
+		if (transitions.covers(localTime + MAX_OFFSET_MILLIS)) {
+			// Consider each interval that the local time could fall within.
+			int firstIndex = transitions.indexOf(localTime - MAX_OFFSET_MILLIS);
+			int lastIndex = transitions.indexOf(localTime + MAX_OFFSET_MILLIS);
+			offsetBefore = transitions.getUtcOffset(firstIndex);
+			offsetAfter = transitions.getUtcOffset(lastIndex);
+			for (int i = firstIndex; i <= lastIndex; ++i) {
+				int offset = transitions.getUtcOffset(i);
+				long when = localTime - offset * MILLIS_PER_SECOND;
+				if (when >= transitions.getTransition(i)
+						&& (i == transitions.size() - 1 || when < transitions
+								.getTransition(i + 1))) {
+					earliest = Math.min(earliest, when);
+					latest = Math.max(latest, when);
+				} else if (i < lastIndex
+						&& when >= transitions.getTransition(i + 1)) {
+					offsetBefore = offset;
+					offsetAfter = transitions.getUtcOffset(i + 1);
+				}
+			}
+		} else {
+			// Beyond the compiled transitions, consider the offsets either
+			// side of the local time.
+			offsetBefore = resolveUtcOffset(localTime - MAX_OFFSET_MILLIS);
+			offsetAfter = resolveUtcOffset(localTime + MAX_OFFSET_MILLIS);
+			for (int offset : new int[] { offsetBefore, offsetAfter }) {
+				long when = localTime - offset * MILLIS_PER_SECOND;
+				if (resolveUtcOffset(when) == offset) {
+					earliest = Math.min(earliest, when);
+					latest = Math.max(latest, when);
+				}
+			}
+		}
+
+		long resolved;
+		if (earliest <= latest) {
+			if (policy == LocalTimePolicy.reject && earliest != latest) {
+				throw new IllegalArgumentException("Local time " + localTime
+						+ " is repeated in " + getName());
+			} else if (policy == LocalTimePolicy.later) {
+				resolved = latest;
+			} else {
+				resolved = earliest;
+			}
+		} else {
+			if (policy == LocalTimePolicy.reject) {
+				throw new IllegalArgumentException("Local time " + localTime
+						+ " is skipped in " + getName());
+			} else if (policy == LocalTimePolicy.later) {
+				resolved = localTime - offsetBefore * MILLIS_PER_SECOND;
+			} else {
+				resolved = localTime - offsetAfter * MILLIS_PER_SECOND;
+			}
+		}
+		return resolved;
+	}
 
 	/**
 	 * Get the offset to UTC given a time.
@@ -71,7 +270,68 @@ public abstract class AbstractZone implements Serializable {
 	 *            the time.
 	 * @return the offset.
 	 */
-	public abstract int resolveUtcOffset(Date when);
+	public int resolveUtcOffset(Date when) {
+		return resolveUtcOffset(when.getTime());
+	}
+
+	/**
+	 * Get the offset to UTC given a time in milliseconds since the epoch.
+	 * 
+	 * @param when
+	 *            the time.
+	 * @return the offset.
+	 */
+	public abstract int resolveUtcOffset(long when);
+
+	/**
+	 * Get the offsets to UTC for a range of times. Each offset is written to
+	 * the same position in the output as its time has in the input. Runs of
+	 * ascending times are resolved by stepping through the transitions rather
+	 * than searching them.
+	 * 
+	 * @param instants
+	 *            the times in milliseconds since the epoch.
+	 * @param from
+	 *            the position of the first time to resolve.
+	 * @param len
+	 *            the number of times to resolve.
+	 * @param out
+	 *            receives the offsets in seconds.
+	 */
+	public void resolveUtcOffsets(long[] instants, int from, int len,
+			int[] out) {
+		ZoneTransitions transitions = getTransitions();
+		long horizon = transitions.getHorizon();
+		int lastIndex = transitions.size() - 1;
+
+		// The interval of the previous time, initially empty.
+		int index = 0;
+		long start = 0;
+		long end = 0;
+		int offset = 0;
+
+		int to = from + len;
+		for (int i = from; i < to; ++i) {
+			long when = instants[i];
+			if (when < start || when >= end) {
+				if (when < horizon) {
+					index = transitions.indexOf(when, index);
+					start = transitions.getTransition(index);
+					if (index < lastIndex) {
+						end = transitions.getTransition(index + 1);
+					} else {
+						end = horizon;
+					}
+					offset = transitions.getUtcOffset(index);
+					out[i] = offset;
+				} else {
+					out[i] = resolveUtcOffset(when);
+				}
+			} else {
+				out[i] = offset;
+			}
+		}
+	}
 
 	public void setName(String name) {
 		this.name = name;
@@ -0,0 +1,203 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.classactionpl.tz;
+
+import java.util.Calendar;
+
+/**
+ * Calendar arithmetic on days and milliseconds since the epoch, used in place
+ * of Calendar objects on resolution paths. The proleptic Gregorian calendar
+ * is assumed throughout and months are zero based as per Calendar.
+ *
+ * @author huntc
+ *
+ */
+final class CivilTime {
+
+	/** */
+	static final long MILLIS_PER_SECOND = 1000L;
+
+	/** */
+	static final long MILLIS_PER_DAY = 24L * 60 * 60 * MILLIS_PER_SECOND;
+
+	/** */
+	static final int DAYS_PER_WEEK = 7;
+
+	/**
+	 * The number of days in a 400 year Gregorian cycle.
+	 */
+	private static final long DAYS_PER_ERA = 146097;
+
+	/**
+	 * The number of days from 0000-03-01 to 1970-01-01.
+	 */
+	private static final long EPOCH_DAY_OFFSET = 719468;
+
+	/**
+	 * 1970-01-01 fell on a Thursday.
+	 */
+	private static final int EPOCH_DAY_OF_WEEK = Calendar.THURSDAY;
+
+	/**
+	 * The day of year of the first day of each month, counting from March.
+	 */
+	private static final int[] MONTH_STARTS_FROM_MARCH = { 0, 31, 61, 92,
+			122, 153, 184, 214, 245, 275, 306, 337 };
+
+	/**
+	 * Determine the number of days since the epoch for a given date. Days are
+	 * lenient so that the 0th day of a month is the last day of the previous
+	 * month, and so on.
+	 *
+	 * @param year
+	 *            the year.
+	 * @param month
+	 *            the month of year from 0.
+	 * @param dayOfMonth
+	 *            the day of month from 1.
+	 * @return the days since 1970-01-01.
+	 */
+	static long daysFromCivil(long year, int month, int dayOfMonth) {
+		// Count years from March so that any leap day falls last.
+		long marchYear;
+		int monthFromMarch;
+		if (month >= Calendar.MARCH) {
+			marchYear = year;
+			monthFromMarch = month - Calendar.MARCH;
+		} else {
+			marchYear = year - 1;
+			monthFromMarch = month + Calendar.DECEMBER - 1;
+		}
+		long era = floorDiv(marchYear, 400);
+		long yearOfEra = marchYear - era * 400;
+		long dayOfYear = MONTH_STARTS_FROM_MARCH[monthFromMarch] + dayOfMonth
+				- 1;
+		long dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100
+				+ dayOfYear;
+		return era * DAYS_PER_ERA + dayOfEra - EPOCH_DAY_OFFSET;
+	}
+
+	/**
+	 * @param epochDay
+	 *            days since 1970-01-01.
+	 * @return the day of week as per Calendar.SUNDAY through Calendar.SATURDAY.
+	 */
+	static int dayOfWeek(long epochDay) {
+		return (int) floorMod(epochDay + EPOCH_DAY_OF_WEEK - Calendar.SUNDAY,
+				DAYS_PER_WEEK)
+				+ Calendar.SUNDAY;
+	}
+
+	/**
+	 * @param epochDay
+	 *            days since 1970-01-01.
+	 * @param dayOfWeek
+	 *            the day of week as per Calendar.SUNDAY through
+	 *            Calendar.SATURDAY.
+	 * @return the closest day on or before the day supplied that falls on the
+	 *         day of week.
+	 */
+	static long dayOfWeekOnOrBefore(long epochDay, int dayOfWeek) {
+		return epochDay
+				- floorMod(dayOfWeek(epochDay) - dayOfWeek, DAYS_PER_WEEK);
+	}
+
+	/**
+	 * @param year
+	 *            the year.
+	 * @param month
+	 *            the month of year from 0.
+	 * @return the number of days in the month.
+	 */
+	static int daysInMonth(long year, int month) {
+		// Month 12 is leniently January of the following year.
+		return (int) (daysFromCivil(year, month + 1, 1) - daysFromCivil(year,
+				month, 1));
+	}
+
+	/**
+	 * @param when
+	 *            milliseconds since the epoch.
+	 * @return the UTC year that the time falls within.
+	 */
+	static int yearOf(long when) {
+		long epochDay = floorDiv(when, MILLIS_PER_DAY);
+		// The inverse of daysFromCivil, counting years from March.
+		long dayFromMarchZero = epochDay + EPOCH_DAY_OFFSET;
+		long era = floorDiv(dayFromMarchZero, DAYS_PER_ERA);
+		long dayOfEra = dayFromMarchZero - era * DAYS_PER_ERA;
+		long yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524
+				- dayOfEra / (DAYS_PER_ERA - 1)) / 365;
+		long dayOfYear = dayOfEra
+				- (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+		long year = yearOfEra + era * 400;
+		if (dayOfYear >= MONTH_STARTS_FROM_MARCH[Calendar.DECEMBER - 1]) {
+			// January or February belong to the following year.
+			++year;
+		}
+		return (int) year;
+	}
+
+	/**
+	 * @param year
+	 *            the year.
+	 * @return midnight UTC on the first of January of the year in milliseconds
+	 *         since the epoch.
+	 */
+	static long yearStart(int year) {
+		return daysFromCivil(year, Calendar.JANUARY, 1) * MILLIS_PER_DAY;
+	}
+
+	/**
+	 * Floor division i.e. rounding toward negative infinity.
+	 *
+	 * @param dividend
+	 *            value.
+	 * @param divisor
+	 *            value.
+	 * @return the quotient.
+	 */
+	static long floorDiv(long dividend, long divisor) {
+		long quotient = dividend / divisor;
+		if ((dividend % divisor != 0) && ((dividend ^ divisor) < 0)) {
+			--quotient;
+		}
+		return quotient;
+	}
+
+	/**
+	 * Floor modulus i.e. the remainder takes the sign of the divisor.
+	 *
+	 * @param dividend
+	 *            value.
+	 * @param divisor
+	 *            value.
+	 * @return the remainder.
+	 */
+	static long floorMod(long dividend, long divisor) {
+		return dividend - floorDiv(dividend, divisor) * divisor;
+	}
+
+	/**
+	 * Prevent instantiation.
+	 */
+	private CivilTime() {
+	}
+}
@@ -0,0 +1,222 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.classactionpl.tz;
+
+import com.classactionpl.tz.Rule.OnType;
+import com.classactionpl.tz.Rule.TimeOfDayType;
+
+/**
+ * The frozen form of a rule as used when resolving times. The years a rule
+ * applies from and to are resolved up front, the year type is reduced to a
+ * modulus and the set of remainders that it accepts, and the in, on and at
+ * fields are packed into a single value.
+ *
+ * @author huntc
+ *
+ */
+final class CompiledRule {
+
+	/** */
+	private static final OnType[] ON_TYPES = OnType.values();
+
+	/** */
+	private static final TimeOfDayType[] TIME_OF_DAY_TYPES = TimeOfDayType
+			.values();
+
+	/** */
+	private static final int IN_SHIFT = 0;
+	/** */
+	private static final int ON_TYPE_SHIFT = 4;
+	/** */
+	private static final int ON_SHIFT = 6;
+	/** */
+	private static final int ON_TYPE_VALUE_SHIFT = 11;
+	/** */
+	private static final int AT_TYPE_SHIFT = 16;
+	/** */
+	private static final int AT_SHIFT = 32;
+
+	/** */
+	private static final int IN_MASK = 0xf;
+	/** */
+	private static final int ON_TYPE_MASK = 0x3;
+	/** */
+	private static final int ON_MASK = 0x1f;
+	/** */
+	private static final int ON_TYPE_VALUE_MASK = 0x1f;
+	/** */
+	private static final int AT_TYPE_MASK = 0x3;
+
+	/** */
+	private static final int PRESIDENTIAL_TERM = 4;
+
+	/**
+	 * The rule compiled.
+	 */
+	private final Rule rule;
+
+	/**
+	 * The first year that the rule applies to.
+	 */
+	private final int fromYear;
+
+	/**
+	 * The last year that the rule applies to.
+	 */
+	private final int toYear;
+
+	/**
+	 * A year applies if its remainder with this modulus is in the set of
+	 * remainders.
+	 */
+	private final int yearModulus;
+
+	/**
+	 * A bit set of the remainders that apply.
+	 */
+	private final int yearRemainders;
+
+	/**
+	 * The in, on and at fields packed together.
+	 */
+	private final long packedInOnAt;
+
+	/**
+	 * The DST save in seconds.
+	 */
+	private final int save;
+
+	/**
+	 * Compile a rule.
+	 *
+	 * @param rule
+	 *            the rule.
+	 */
+	CompiledRule(Rule rule) {
+		this.rule = rule;
+		fromYear = rule.resolveFrom();
+		toYear = rule.resolveTo();
+		save = rule.getSave();
+
+		switch (rule.getType()) {
+		case even:
+			yearModulus = 2;
+			yearRemainders = 1 << 0;
+			break;
+		case odd:
+			yearModulus = 2;
+			yearRemainders = 1 << 1;
+			break;
+		case uspres:
+			yearModulus = PRESIDENTIAL_TERM;
+			yearRemainders = 1 << 0;
+			break;
+		case nonpres:
+		case nonuspres:
+			yearModulus = PRESIDENTIAL_TERM;
+			yearRemainders = (1 << 1) | (1 << 2) | (1 << 3);
+			break;
+		default:
+			yearModulus = 1;
+			yearRemainders = 1 << 0;
+			break;
+		}
+
+		int onType = rule.getOnType().ordinal();
+		int atType = rule.getAtType().ordinal();
+		int packedInOn = ((rule.getIn() & IN_MASK) << IN_SHIFT)
+				| ((onType & ON_TYPE_MASK) << ON_TYPE_SHIFT)
+				| ((rule.getOn() & ON_MASK) << ON_SHIFT)
+				| ((rule.getOnTypeValue() & ON_TYPE_VALUE_MASK)
+						<< ON_TYPE_VALUE_SHIFT)
+				| ((atType & AT_TYPE_MASK) << AT_TYPE_SHIFT);
+		packedInOnAt = ((long) rule.getAt() << AT_SHIFT)
+				| (packedInOn & 0xffffffffL);
+	}
+
+	/**
+	 * @return the first year that the rule applies to.
+	 */
+	int getFromYear() {
+		return fromYear;
+	}
+
+	/**
+	 * @return the rule compiled.
+	 */
+	Rule getRule() {
+		return rule;
+	}
+
+	/**
+	 * @return the DST save in seconds.
+	 */
+	int getSave() {
+		return save;
+	}
+
+	/**
+	 * @return the last year that the rule applies to.
+	 */
+	int getToYear() {
+		return toYear;
+	}
+
+	/**
+	 * Resolve when the rule starts in a given year.
+	 *
+	 * @param year
+	 *            the year.
+	 * @param utcOffset
+	 *            the UTC offset in seconds of the zone that the rule is
+	 *            applied to.
+	 * @return the time in milliseconds since the epoch.
+	 */
+	long resolveStart(int year, int utcOffset) {
+		int packedInOn = (int) packedInOnAt;
+		return Rule.resolveInOnAtMillis(year, (packedInOn >>> IN_SHIFT)
+				& IN_MASK, ON_TYPES[(packedInOn >>> ON_TYPE_SHIFT)
+				& ON_TYPE_MASK], (packedInOn >>> ON_SHIFT) & ON_MASK,
+				(packedInOn >>> ON_TYPE_VALUE_SHIFT) & ON_TYPE_VALUE_MASK,
+				(int) (packedInOnAt >> AT_SHIFT),
+				TIME_OF_DAY_TYPES[(packedInOn >>> AT_TYPE_SHIFT)
+						& AT_TYPE_MASK], utcOffset, save);
+	}
+
+	/**
+	 * Determine if the rule applies to a year of its type. The result is the
+	 * same as that of the rule's yearIsType.
+	 *
+	 * @param year
+	 *            the year to test.
+	 * @return true if it does.
+	 */
+	boolean yearIsType(int year) {
+		// Negative remainders are never accepted, as per the rule.
+		int remainder = year % yearModulus;
+		return remainder >= 0 && (yearRemainders & (1 << remainder)) != 0;
+	}
+
+	@Override
+	public String toString() {
+		return "CompiledRule [rule=" + rule + ", fromYear=" + fromYear
+				+ ", toYear=" + toYear + "]";
+	}
+}
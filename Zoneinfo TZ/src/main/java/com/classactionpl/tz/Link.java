@@ -20,7 +20,6 @@
 package com.classactionpl.tz;
 
 import java.util.Collection;
-import java.util.Date;
 
 /**
  * A link is an alias to another zone object.
@@ -36,10 +35,23 @@ public class Link extends AbstractZone {
 	private static final long serialVersionUID = 1L;
 	
 	/**
-	 * The zone to link to.
+	 * The zone to link to. Where a link is made to another link, the zone
+	 * linked to by that link is held instead so that chains of links are
+	 * flattened.
 	 */
 	private AbstractZone targetZone;
 
+	@Override
+	public Zone getCanonicalZone() {
+		Zone canonicalZone;
+		if (targetZone != null) {
+			canonicalZone = targetZone.getCanonicalZone();
+		} else {
+			canonicalZone = null;
+		}
+		return canonicalZone;
+	}
+
 	@Override
 	public Collection<ZoneDetail> getDetails() {
 		return targetZone.getDetails();
@@ -50,17 +62,39 @@ public class Link extends AbstractZone {
 	}
 
 	@Override
-	public ZoneDetail resolveDetail(Date when) {
+	public ZoneTransitions getTransitions() {
+		return targetZone.getTransitions();
+	}
+
+	@Override
+	public ZoneDetail resolveDetail(long when) {
 		return targetZone.resolveDetail(when);
 	}
 
 	@Override
-	public int resolveUtcOffset(Date when) {
+	public int resolveUtcOffset(long when) {
 		return targetZone.resolveUtcOffset(when);
 	}
 
+	/**
+	 * Assign the zone to link to. If it is a link then its canonical zone is
+	 * linked to instead, if it has one.
+	 * 
+	 * @param targetZone
+	 *            the zone.
+	 */
 	public void setTargetZone(AbstractZone targetZone) {
-		this.targetZone = targetZone;
+		AbstractZone canonicalZone;
+		if (targetZone != null) {
+			canonicalZone = targetZone.getCanonicalZone();
+		} else {
+			canonicalZone = null;
+		}
+		if (canonicalZone != null) {
+			this.targetZone = canonicalZone;
+		} else {
+			this.targetZone = targetZone;
+		}
 	}
 
 	@Override
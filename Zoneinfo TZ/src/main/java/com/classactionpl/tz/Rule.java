@@ -22,8 +22,6 @@ package com.classactionpl.tz;
 import java.io.Serializable;
 import java.util.Calendar;
 import java.util.Date;
-import java.util.GregorianCalendar;
-import java.util.TimeZone;
 
 /**
  * Captures a Zoneinfo Rule.
@@ -73,6 +71,17 @@ public class Rule implements Serializable {
 	 */
 	private static final long serialVersionUID = 1L;
 
+	/**
+	 * The year resolved for "minimum", being GregorianCalendar's minimum year.
+	 */
+	static final int MIN_YEAR = 1;
+
+	/**
+	 * The year resolved for "maximum", being one less than
+	 * GregorianCalendar's maximum year.
+	 */
+	static final int MAX_YEAR = 292278993;
+
 	/**
 	 * Given a year and in, on and at values resolve to a date object.
 	 * 
@@ -101,79 +110,154 @@ public class Rule implements Serializable {
 	public static Date resolveInOnAt(int year, Integer in, OnType onType,
 			Integer on, int onTypeValue, Integer at, TimeOfDayType atType,
 			int utcOffset, int save) {
-		Calendar cal = new GregorianCalendar(TimeZone.getTimeZone("GMT"));
-		cal.set(Calendar.YEAR, year);
-
-		cal.set(Calendar.MILLISECOND, 0);
-
-		boolean inSet = false;
-		boolean onSet = false;
-		boolean atSet = false;
-
-		if (in != null) {
-			cal.set(Calendar.MONTH, in);
-
-			inSet = true;
-
-			if (on != null) {
-				switch (onType) {
-				case last:
-					cal.set(Calendar.DAY_OF_WEEK, on);
-					cal.set(Calendar.DAY_OF_WEEK_IN_MONTH, -1);
-					break;
-				case let:
-					cal.set(Calendar.DAY_OF_WEEK, on);
-					cal.set(Calendar.DAY_OF_WEEK_IN_MONTH, -onTypeValue);
-					break;
-				case get:
-					cal.set(Calendar.DAY_OF_WEEK, on);
-					cal.set(Calendar.DAY_OF_WEEK_IN_MONTH, onTypeValue);
-					break;
-				default: // value
-					cal.set(Calendar.DAY_OF_MONTH, on);
-				}
-
-				onSet = true;
-
-				if (at != null) {
-					int offset;
-					switch (atType) {
-					case localStandard:
-						offset = utcOffset;
-						break;
-					case universal:
-						offset = 0;
-						break;
-					default: // wallclock
-						offset = utcOffset + save;
-					}
-					final int secondsInMinutes = 60;
-					cal.set(Calendar.SECOND, at % secondsInMinutes);
-					cal.set(Calendar.MINUTE, at / secondsInMinutes
-							% secondsInMinutes);
-					final int secondsInHour = 60 * 60;
-					cal.set(Calendar.HOUR_OF_DAY, at / secondsInHour);
-
-					cal.add(Calendar.SECOND, -offset);
-
-					atSet = true;
-				}
-			}
-		}
+		return new Date(resolvePartialInOnAtMillis(year, in, onType, on,
+				onTypeValue, at, atType, utcOffset, save));
+	}
 
-		if (!inSet) {
-			cal.set(Calendar.MONTH, Calendar.JANUARY);
-		}
-		if (!onSet) {
-			cal.set(Calendar.DAY_OF_MONTH, 1);
+	/**
+	 * Given a year and optional in, on and at values resolve to milliseconds
+	 * since the epoch. When in is not supplied then midnight UTC on the first
+	 * of January is assumed. When on is not supplied then midnight UTC on the
+	 * first of the month is assumed. When at is not supplied then midnight UTC
+	 * is assumed.
+	 * 
+	 * @param year
+	 *            the year to resolve things with.
+	 * @param in
+	 *            value.
+	 * @param onType
+	 *            value.
+	 * @param on
+	 *            value.
+	 * @param onTypeValue
+	 *            value.
+	 * @param at
+	 *            value.
+	 * @param atType
+	 *            value.
+	 * @param utcOffset
+	 *            the utc offset (seconds) to use for at values when using wall
+	 *            clock or local standard time.
+	 * @param save
+	 *            the DST value (seconds) to use for at values when using wall
+	 *            clock.
+	 * @return the time resolved in milliseconds since the epoch.
+	 */
+	public static long resolvePartialInOnAtMillis(int year, Integer in,
+			OnType onType, Integer on, int onTypeValue, Integer at,
+			TimeOfDayType atType, int utcOffset, int save) {
+		long resolved;
+		if (in == null) {
+			resolved = CivilTime.daysFromCivil(year, Calendar.JANUARY, 1)
+					* CivilTime.MILLIS_PER_DAY;
+		} else if (on == null) {
+			resolved = CivilTime.daysFromCivil(year, in.intValue(), 1)
+					* CivilTime.MILLIS_PER_DAY;
+		} else if (at == null) {
+			resolved = resolveInOn(year, in.intValue(), onType, on.intValue(),
+					onTypeValue)
+					* CivilTime.MILLIS_PER_DAY;
+		} else {
+			resolved = resolveInOnAtMillis(year, in.intValue(), onType, on
+					.intValue(), onTypeValue, at.intValue(), atType, utcOffset,
+					save);
 		}
-		if (!atSet) {
-			cal.set(Calendar.SECOND, 0);
-			cal.set(Calendar.MINUTE, 0);
-			cal.set(Calendar.HOUR_OF_DAY, 0);
+		return resolved;
+	}
+
+	/**
+	 * Given a year and in, on and at values resolve to milliseconds since the
+	 * epoch. No objects are created in doing so.
+	 * 
+	 * @param year
+	 *            the year to resolve things with.
+	 * @param in
+	 *            value.
+	 * @param onType
+	 *            value.
+	 * @param on
+	 *            value.
+	 * @param onTypeValue
+	 *            value.
+	 * @param at
+	 *            value.
+	 * @param atType
+	 *            value.
+	 * @param utcOffset
+	 *            the utc offset (seconds) to use for at values when using wall
+	 *            clock or local standard time.
+	 * @param save
+	 *            the DST value (seconds) to use for at values when using wall
+	 *            clock.
+	 * @return the time resolved in milliseconds since the epoch.
+	 */
+	public static long resolveInOnAtMillis(int year, int in, OnType onType,
+			int on, int onTypeValue, int at, TimeOfDayType atType,
+			int utcOffset, int save) {
+		int offset;
+		switch (atType) {
+		case localStandard:
+			offset = utcOffset;
+			break;
+		case universal:
+			offset = 0;
+			break;
+		default: // wallclock
+			offset = utcOffset + save;
 		}
+		return resolveInOn(year, in, onType, on, onTypeValue)
+				* CivilTime.MILLIS_PER_DAY + (at - offset)
+				* CivilTime.MILLIS_PER_SECOND;
+	}
+
+	/**
+	 * Given a year and in and on values resolve to a day. Days of week are
+	 * resolved in the same lenient manner as Calendar's DAY_OF_WEEK_IN_MONTH
+	 * field i.e. the on type value counts weeks forward from the start of the
+	 * month for "get", and backward from the end of the month for "let".
+	 * 
+	 * @param year
+	 *            the year to resolve things with.
+	 * @param in
+	 *            value.
+	 * @param onType
+	 *            value.
+	 * @param on
+	 *            value.
+	 * @param onTypeValue
+	 *            value.
+	 * @return the day resolved in days since the epoch.
+	 */
+	private static long resolveInOn(int year, int in, OnType onType, int on,
+			int onTypeValue) {
+		long resolved;
+		if (onType == OnType.value) {
+			resolved = CivilTime.daysFromCivil(year, in, on);
+		} else {
+			int dayOfWeekInMonth;
+			switch (onType) {
+			case last:
+				dayOfWeekInMonth = -1;
+				break;
+			case let:
+				dayOfWeekInMonth = -onTypeValue;
+				break;
+			default: // get
+				dayOfWeekInMonth = onTypeValue;
+			}
 
-		return cal.getTime();
+			long firstDay = CivilTime.daysFromCivil(year, in, 1);
+			long searchFrom;
+			if (dayOfWeekInMonth >= 0) {
+				searchFrom = firstDay + CivilTime.DAYS_PER_WEEK
+						* dayOfWeekInMonth - 1;
+			} else {
+				searchFrom = firstDay + CivilTime.daysInMonth(year, in)
+						+ CivilTime.DAYS_PER_WEEK * (dayOfWeekInMonth + 1) - 1;
+			}
+			resolved = CivilTime.dayOfWeekOnOrBefore(searchFrom, on);
+		}
+		return resolved;
 	}
 
 	/**
@@ -361,10 +445,10 @@ public class Rule implements Serializable {
 		int resolvedFrom;
 		switch (fromType) {
 		case min:
-			resolvedFrom = new GregorianCalendar().getMinimum(Calendar.YEAR);
+			resolvedFrom = MIN_YEAR;
 			break;
 		case max:
-			resolvedFrom = new GregorianCalendar().getMaximum(Calendar.YEAR) - 1;
+			resolvedFrom = MAX_YEAR;
 			break;
 		default:
 			resolvedFrom = from;
@@ -382,10 +466,10 @@ public class Rule implements Serializable {
 		int resolvedTo;
 		switch (toType) {
 		case min:
-			resolvedTo = new GregorianCalendar().getMinimum(Calendar.YEAR);
+			resolvedTo = MIN_YEAR;
 			break;
 		case max:
-			resolvedTo = new GregorianCalendar().getMaximum(Calendar.YEAR) - 1;
+			resolvedTo = MAX_YEAR;
 			break;
 		default:
 			if (!toTypeOnly) {
@@ -20,7 +20,6 @@
 package com.classactionpl.tz;
 
 import java.util.ArrayList;
-import java.util.Date;
 import java.util.List;
 
 /**
@@ -41,39 +40,115 @@ public class Zone extends AbstractZone {
 	 */
 	private final List<ZoneDetail> details = new ArrayList<ZoneDetail>();
 
+	/**
+	 * The compiled form of the details, created upon first use. Details are
+	 * therefore not expected to change once the zone is in use.
+	 */
+	private transient volatile ZoneTransitions transitions;
+
+	/**
+	 * The resolved until instant of each detail, created upon first use.
+	 */
+	private transient volatile long[] untils;
+
+	@Override
+	public Zone getCanonicalZone() {
+		return this;
+	}
+
 	@Override
 	public List<ZoneDetail> getDetails() {
 		return details;
 	}
 
 	@Override
-	public ZoneDetail resolveDetail(Date when) {
-		ZoneDetail activeDetail = null;
-		int detailsSize = details.size();
-		if (detailsSize > 0) {
-			Date activeDetailUntil = null;
-			for (int i = detailsSize - 1; i >= 0; --i) {
-				ZoneDetail detail = details.get(i);
-				Date until = detail.resolveUntil(when);
-				int compare = until.compareTo(when);
-				if (compare < 0) {
-					break;
-				}
-				if (compare == 0 && activeDetail != null) {
-					break;
-				}
-				if (activeDetail == null || until.before(activeDetailUntil)) {
-					activeDetail = detail;
-					activeDetailUntil = until;
-				}
+	public ZoneTransitions getTransitions() {
+		ZoneTransitions compiledTransitions = transitions;
+		if (compiledTransitions == null) {
+			compiledTransitions = ZoneTransitions.compile(this);
+			transitions = compiledTransitions;
+		}
+		return compiledTransitions;
+	}
+
+	/**
+	 * @return the until instant of each detail, in the order of the details.
+	 */
+	private long[] getUntils() {
+		long[] resolvedUntils = untils;
+		if (resolvedUntils == null) {
+			resolvedUntils = new long[details.size()];
+			for (int i = 0; i < resolvedUntils.length; ++i) {
+				resolvedUntils[i] = details.get(i).resolveUntil();
 			}
+			untils = resolvedUntils;
 		}
+		return resolvedUntils;
+	}
 
+	@Override
+	public ZoneDetail resolveDetail(long when) {
+		// The detail in force is the first one whose until is after the time.
+		ZoneDetail activeDetail;
+		long[] resolvedUntils = getUntils();
+		int low = 0;
+		int high = resolvedUntils.length;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (resolvedUntils[mid] <= when) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+		if (low < resolvedUntils.length) {
+			activeDetail = details.get(low);
+		} else if (low > 0 && resolvedUntils[low - 1] == when) {
+			// The last detail remains in force at its until.
+			activeDetail = details.get(low - 1);
+		} else {
+			activeDetail = null;
+		}
 		return activeDetail;
 	}
 
+	/**
+	 * Replace a detail with one describing the same thing, discarding what has
+	 * been compiled from the details.
+	 * 
+	 * @param index
+	 *            the position of the detail.
+	 * @param detail
+	 *            the replacement detail.
+	 */
+	void replaceDetail(int index, ZoneDetail detail) {
+		details.set(index, detail);
+		transitions = null;
+		untils = null;
+	}
+
 	@Override
-	public int resolveUtcOffset(Date when) {
+	public int resolveUtcOffset(long when) {
+		int offset;
+		ZoneTransitions compiledTransitions = getTransitions();
+		if (compiledTransitions.covers(when)) {
+			offset = compiledTransitions.getUtcOffset(compiledTransitions
+					.indexOf(when));
+		} else {
+			offset = resolveUtcOffsetFromRules(when);
+		}
+		return offset;
+	}
+
+	/**
+	 * Get the offset to UTC given a time by resolving the details and their
+	 * rules directly.
+	 * 
+	 * @param when
+	 *            the time.
+	 * @return the offset.
+	 */
+	private int resolveUtcOffsetFromRules(long when) {
 		int offset;
 		ZoneDetail detail = resolveDetail(when);
 		if (detail != null) {
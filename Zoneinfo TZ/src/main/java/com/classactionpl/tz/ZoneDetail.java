@@ -20,12 +20,13 @@
 package com.classactionpl.tz;
 
 import java.io.Serializable;
+import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Date;
-import java.util.GregorianCalendar;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.SortedMap;
-import java.util.TimeZone;
 import java.util.TreeMap;
 
 import com.classactionpl.tz.Rule.OnType;
@@ -39,14 +40,32 @@ import com.classactionpl.tz.Rule.TimeOfDayType;
  */
 public class ZoneDetail implements Serializable {
 	/**
-	 * 
+	 * Version 2 holds the until fields as primitives, with the month and day
+	 * packed into one field.
 	 */
-	private static final long serialVersionUID = 1L;
+	private static final long serialVersionUID = 2L;
 
 	/**
-	 * Cache the time zone representing UTC for greater efficiency.
+	 * The number of years of resolved rule starts held for a detail. Years
+	 * share slots by their value modulo this size, a newly resolved year
+	 * evicting whatever year previously held its slot.
 	 */
-	private static final TimeZone UTC_TZ = TimeZone.getTimeZone("GMT");
+	private static final int YEAR_RULES_CACHE_SIZE = 8;
+
+	/** */
+	private static final int UNTIL_PRESENT = 1 << 0;
+	/** */
+	private static final int UNTIL_IN_PRESENT = 1 << 1;
+	/** */
+	private static final int UNTIL_ON_PRESENT = 1 << 2;
+	/** */
+	private static final int UNTIL_AT_PRESENT = 1 << 3;
+	/** */
+	private static final int UNTIL_IN_SHIFT = 4;
+	/** */
+	private static final int UNTIL_IN_MASK = 0xf;
+	/** */
+	private static final int UNTIL_ON_SHIFT = 8;
 
 	/**
 	 * The amount of time to add to UTC to get standard time in this zone. This
@@ -80,26 +99,39 @@ public class ZoneDetail implements Serializable {
 	 */
 	private String dstFormat;
 
+	/**
+	 * Rule starts resolved per year, created upon first use. Rules are
+	 * therefore not expected to change once the detail is in use.
+	 */
+	private transient volatile YearRules[] yearRulesCache;
+
+	/**
+	 * The compiled form of the rules, created upon first use.
+	 */
+	private transient volatile CompiledRule[] compiledRules;
+
+	/**
+	 * The rules adjacent to each rule that match DST criteria, created upon
+	 * first use.
+	 */
+	private transient volatile AdjacentRules adjacentRules;
+
 	/**
 	 * The time at which the UTC offset or the rule(s) change for a location. If
-	 * this is not null, the time zone information is generated from the given
-	 * UTC offset and rule change until the time specified. The month, day, and
+	 * present, the time zone information is generated from the given UTC
+	 * offset and rule change until the time specified. The month, day, and
 	 * time of day have the same format as the IN, ON, and AT fields of a rule;
 	 * trailing fields can be omitted, and default to the earliest possible
 	 * value for the missing fields
 	 */
-	private Integer until;
+	private int until;
 
 	/**
-	 * The calendar month the rule applies from or null if midnight January UTC
-	 * is to be assumed.
-	 */
-	private Integer untilIn;
-
-	/**
-	 * The day of the month the rule applies to.
+	 * The calendar month and the day of the month that the detail applies
+	 * until, packed together with bits recording which of the until fields
+	 * are present.
 	 * <p>
-	 * Patterns include:
+	 * Day of the month patterns include:
 	 * 
 	 * <p>
 	 * 5 the fifth of the month
@@ -112,12 +144,12 @@ public class ZoneDetail implements Serializable {
 	 * <p>
 	 * Sun<=25 last Sunday on or before the 25th
 	 */
-	private OnType untilOnType;
+	private int untilInOn;
 
 	/**
-	 * The value associated with the above.
+	 * The type of the until day of the month.
 	 */
-	private Integer untilOn;
+	private OnType untilOnType;
 
 	/**
 	 * Any value associated with the type e.g. the comparator value.
@@ -125,8 +157,8 @@ public class ZoneDetail implements Serializable {
 	private int untilOnTypeValue;
 
 	/**
-	 * The time of day that the rule applies to or null for midnight. The time
-	 * is expressed as seconds.
+	 * The time of day that the detail applies until, if present. The time is
+	 * expressed as seconds.
 	 * <p>
 	 * Patterns include:
 	 * 
@@ -142,7 +174,7 @@ public class ZoneDetail implements Serializable {
 	 * where hour 0 is midnight at the start of the day, and hour 24 is midnight
 	 * at the end of the day.
 	 */
-	private Integer untilAt;
+	private int untilAt;
 
 	/**
 	 * A qualifier for the rule at time expressing the type of time to be
@@ -158,6 +190,22 @@ public class ZoneDetail implements Serializable {
 		return format;
 	}
 
+	/**
+	 * @return the compiled form of the rules in the same order as the rules,
+	 *         or null if there are no rules.
+	 */
+	CompiledRule[] getCompiledRules() {
+		CompiledRule[] resolvedCompiledRules = compiledRules;
+		if (resolvedCompiledRules == null && rules != null) {
+			resolvedCompiledRules = new CompiledRule[rules.size()];
+			for (int i = 0; i < resolvedCompiledRules.length; ++i) {
+				resolvedCompiledRules[i] = new CompiledRule(rules.get(i));
+			}
+			compiledRules = resolvedCompiledRules;
+		}
+		return resolvedCompiledRules;
+	}
+
 	public List<Rule> getRules() {
 		return rules;
 	}
@@ -167,11 +215,23 @@ public class ZoneDetail implements Serializable {
 	}
 
 	public Integer getUntil() {
-		return until;
+		Integer resolvedUntil;
+		if ((untilInOn & UNTIL_PRESENT) != 0) {
+			resolvedUntil = Integer.valueOf(until);
+		} else {
+			resolvedUntil = null;
+		}
+		return resolvedUntil;
 	}
 
 	public Integer getUntilAt() {
-		return untilAt;
+		Integer resolvedUntilAt;
+		if ((untilInOn & UNTIL_AT_PRESENT) != 0) {
+			resolvedUntilAt = Integer.valueOf(untilAt);
+		} else {
+			resolvedUntilAt = null;
+		}
+		return resolvedUntilAt;
 	}
 
 	public TimeOfDayType getUntilAtType() {
@@ -179,11 +239,24 @@ public class ZoneDetail implements Serializable {
 	}
 
 	public Integer getUntilIn() {
-		return untilIn;
+		Integer resolvedUntilIn;
+		if ((untilInOn & UNTIL_IN_PRESENT) != 0) {
+			resolvedUntilIn = Integer.valueOf((untilInOn >>> UNTIL_IN_SHIFT)
+					& UNTIL_IN_MASK);
+		} else {
+			resolvedUntilIn = null;
+		}
+		return resolvedUntilIn;
 	}
 
 	public Integer getUntilOn() {
-		return untilOn;
+		Integer resolvedUntilOn;
+		if ((untilInOn & UNTIL_ON_PRESENT) != 0) {
+			resolvedUntilOn = Integer.valueOf(untilInOn >> UNTIL_ON_SHIFT);
+		} else {
+			resolvedUntilOn = null;
+		}
+		return resolvedUntilOn;
 	}
 
 	public OnType getUntilOnType() {
@@ -198,6 +271,78 @@ public class ZoneDetail implements Serializable {
 		return utcOffset;
 	}
 
+	/**
+	 * Determine the abbreviation for the zone while a given rule is in force.
+	 * 
+	 * @param rule
+	 *            the rule in force or null if there is none.
+	 * @param daylight
+	 *            whether the abbreviation for daylight time is required, as
+	 *            opposed to standard time.
+	 * @return the abbreviation or null if there is no format.
+	 */
+	public String resolveAbbreviation(Rule rule, boolean daylight) {
+		String abbreviation;
+		if (daylight) {
+			abbreviation = dstFormat;
+		} else {
+			abbreviation = null;
+		}
+
+		if (abbreviation == null) {
+			abbreviation = format;
+		}
+
+		if (abbreviation != null) {
+			// The variable part is left as is if there is no rule to supply
+			// letters.
+			int variablePart = abbreviation.indexOf("%s");
+			Rule lettersRule = resolveRule(rule, daylight);
+			if (variablePart >= 0 && lettersRule != null) {
+				String letters = lettersRule.getLetters();
+				if (letters == null) {
+					letters = "";
+				}
+				abbreviation = abbreviation.substring(0, variablePart)
+						+ letters + abbreviation.substring(variablePart + 2);
+			}
+			abbreviation = abbreviation.intern();
+		}
+
+		return abbreviation;
+	}
+
+	/**
+	 * Given the rule in force, determine a rule that matches DST criteria.
+	 * 
+	 * @param rule
+	 *            the rule in force or null if there is none.
+	 * @param daylight
+	 *            whether or not the rule should comply with DST.
+	 * @return the rule found or null if none found.
+	 */
+	public Rule resolveRule(Rule rule, boolean daylight) {
+		Rule resolvedRule;
+		if (rules != null && rule != null) {
+			if ((rule.getSave() != 0) == daylight) {
+				resolvedRule = rule;
+			} else {
+				// The rule we have doesn't match the request to return
+				// format details given the when date. We therefore need an
+				// adjacent rule that does match the criteria.
+				AdjacentRules resolvedAdjacentRules = adjacentRules;
+				if (resolvedAdjacentRules == null) {
+					resolvedAdjacentRules = new AdjacentRules();
+					adjacentRules = resolvedAdjacentRules;
+				}
+				resolvedRule = resolvedAdjacentRules.get(rule, daylight);
+			}
+		} else {
+			resolvedRule = null;
+		}
+		return resolvedRule;
+	}
+
 	/**
 	 * Go through our rules and determine which rule falls upon the time
 	 * supplied.
@@ -207,24 +352,40 @@ public class ZoneDetail implements Serializable {
 	 * @return the rule found or null if there is none.
 	 */
 	public Rule resolveRule(Date when) {
-		Calendar whenCal = new GregorianCalendar(UTC_TZ);
-		whenCal.setTime(when);
-
-		int whenYear = whenCal.get(Calendar.YEAR);
-		int whenFromYear;
-		if (whenYear > whenCal.getMinimum(Calendar.YEAR)) {
-			whenFromYear = whenYear - 1;
-		} else {
-			whenFromYear = whenYear;
-		}
+		return resolveRule(when.getTime());
+	}
 
-		SortedMap<Date, Rule> resolvedRules = resolveRules(whenFromYear,
-				whenYear, when);
-		Rule activeRule = resolvedRules.get(whenCal.getTime());
-		if (activeRule == null) {
-			SortedMap<Date, Rule> matchedRules = resolvedRules.headMap(when);
-			if (matchedRules.size() > 0) {
-				activeRule = resolvedRules.get(matchedRules.lastKey());
+	/**
+	 * Go through our rules and determine which rule falls upon the time
+	 * supplied. The rule is that which starts last on or before the time,
+	 * considering the year of the time and the year before it.
+	 * 
+	 * @param when
+	 *            the time to use in milliseconds since the epoch.
+	 * @return the rule found or null if there is none.
+	 */
+	public Rule resolveRule(long when) {
+		Rule activeRule = null;
+		long activeRuleStart = 0;
+
+		int whenYear = CivilTime.yearOf(when);
+		for (int year = whenYear - 1; year <= whenYear; ++year) {
+			YearRules yearRules = resolveYearRules(year);
+			for (int i = 0; i < yearRules.rules.length; ++i) {
+				if (yearRules.toStarts[i] <= when) {
+					break;
+				}
+				if (yearRules.fromStarts[i] <= when) {
+					// Where rules start at the same time, the one
+					// encountered last takes precedence.
+					long ruleStart = yearRules.starts[i];
+					if (ruleStart <= when
+							&& (activeRule == null
+									|| ruleStart >= activeRuleStart)) {
+						activeRule = yearRules.rules[i];
+						activeRuleStart = ruleStart;
+					}
+				}
 			}
 		}
 
@@ -249,52 +410,50 @@ public class ZoneDetail implements Serializable {
 			Date limit) {
 
 		SortedMap<Date, Rule> resolvedRules = new TreeMap<Date, Rule>();
-		int rulesSize = rules.size();
-		if (rulesSize > 0) {
-			for (int year = fromYear; year <= toYear; ++year) {
-				for (int i = rulesSize - 1; i >= 0; --i) {
-					Rule rule = rules.get(i);
-					if (rule.yearIsType(year)) {
-						int resolvedTo = rule.resolveTo();
-						Date resolvedToDate = Rule.resolveInOnAt(resolvedTo,
-								rule.getIn(), rule.getOnType(), rule.getOn(),
-								rule.getOnTypeValue(), rule.getAt(),
-								rule.getAtType(), utcOffset, rule.getSave());
-						int compare = resolvedToDate.compareTo(limit);
-						if (compare <= 0) {
-							break;
-						}
-
-						int resolvedFrom = rule.resolveFrom();
-						Date resolvedFromDate = Rule.resolveInOnAt(
-								resolvedFrom, rule.getIn(), rule.getOnType(),
-								rule.getOn(), rule.getOnTypeValue(),
-								rule.getAt(), rule.getAtType(), utcOffset,
-								rule.getSave());
-
-						compare = resolvedFromDate.compareTo(limit);
-
-						if (compare <= 0) {
-							// We have a candidate rule so let us now see if it
-							// applies when put in terms of the year associated
-							// with the year we're interested in.
-
-							Date normalisedResolvedFromDate = Rule
-									.resolveInOnAt(year, rule.getIn(),
-											rule.getOnType(), rule.getOn(),
-											rule.getOnTypeValue(),
-											rule.getAt(), rule.getAtType(),
-											utcOffset, rule.getSave());
-
-							resolvedRules.put(normalisedResolvedFromDate, rule);
-						}
-					}
+		long limitMillis = limit.getTime();
+		for (int year = fromYear; year <= toYear; ++year) {
+			YearRules yearRules = resolveYearRules(year);
+			for (int i = 0; i < yearRules.rules.length; ++i) {
+				if (yearRules.toStarts[i] <= limitMillis) {
+					break;
+				}
+
+				if (yearRules.fromStarts[i] <= limitMillis) {
+					// We have a candidate rule so let us now see if it
+					// applies when put in terms of the year associated
+					// with the year we're interested in.
+					resolvedRules.put(new Date(yearRules.starts[i]),
+							yearRules.rules[i]);
 				}
 			}
 		}
 		return resolvedRules;
 	}
 
+	/**
+	 * Obtain the rule starts for a year, resolving them if they are not
+	 * already held.
+	 * 
+	 * @param year
+	 *            the year.
+	 * @return the rule starts.
+	 */
+	private YearRules resolveYearRules(int year) {
+		YearRules[] cache = yearRulesCache;
+		if (cache == null) {
+			cache = new YearRules[YEAR_RULES_CACHE_SIZE];
+			yearRulesCache = cache;
+		}
+
+		int slot = (int) CivilTime.floorMod(year, YEAR_RULES_CACHE_SIZE);
+		YearRules yearRules = cache[slot];
+		if (yearRules == null || yearRules.year != year) {
+			yearRules = new YearRules(year);
+			cache[slot] = yearRules;
+		}
+		return yearRules;
+	}
+
 	/**
 	 * Resolve the until value.
 	 * 
@@ -303,9 +462,22 @@ public class ZoneDetail implements Serializable {
 	 * @return the date determined from the until values.
 	 */
 	public Date resolveUntil(Date when) {
-		Date resolvedUntil;
-		if (until == null) {
-			resolvedUntil = new Date(Long.MAX_VALUE);
+		return new Date(resolveUntil(when.getTime()));
+	}
+
+	/**
+	 * Resolve the until value.
+	 * 
+	 * @param when
+	 *            the time to use when rules are to be resolved, in
+	 *            milliseconds since the epoch.
+	 * @return the time determined from the until values or Long.MAX_VALUE if
+	 *         there is no until.
+	 */
+	public long resolveUntil(long when) {
+		long resolvedUntil;
+		if ((untilInOn & UNTIL_PRESENT) == 0) {
+			resolvedUntil = Long.MAX_VALUE;
 		} else {
 			int resolvedSave;
 			if (rules == null) {
@@ -318,13 +490,60 @@ public class ZoneDetail implements Serializable {
 					resolvedSave = 0;
 				}
 			}
-			resolvedUntil = Rule.resolveInOnAt(until, untilIn, untilOnType,
-					untilOn, untilOnTypeValue, untilAt, untilAtType, utcOffset,
-					resolvedSave);
+			resolvedUntil = resolveUntilMillis(resolvedSave);
 		}
 		return resolvedUntil;
 	}
 
+	/**
+	 * Resolve the until value as an absolute instant. Any save applied is
+	 * that of the rule in force just prior to the until.
+	 * 
+	 * @return the time determined from the until values or Long.MAX_VALUE if
+	 *         there is no until.
+	 */
+	public long resolveUntil() {
+		long resolvedUntil;
+		if ((untilInOn & UNTIL_PRESENT) == 0) {
+			resolvedUntil = Long.MAX_VALUE;
+		} else {
+			long standardUntil = resolveUntilMillis(0);
+			resolvedUntil = resolveUntil(standardUntil - 1);
+		}
+		return resolvedUntil;
+	}
+
+	/**
+	 * Resolve the until fields in the same manner as
+	 * Rule.resolvePartialInOnAtMillis, without boxing them.
+	 * 
+	 * @param resolvedSave
+	 *            the DST value (seconds) to use for an at value when using
+	 *            wall clock.
+	 * @return the time resolved in milliseconds since the epoch.
+	 */
+	private long resolveUntilMillis(int resolvedSave) {
+		long resolved;
+		int untilIn = (untilInOn >>> UNTIL_IN_SHIFT) & UNTIL_IN_MASK;
+		if ((untilInOn & UNTIL_IN_PRESENT) == 0) {
+			resolved = CivilTime.daysFromCivil(until, Calendar.JANUARY, 1)
+					* CivilTime.MILLIS_PER_DAY;
+		} else if ((untilInOn & UNTIL_ON_PRESENT) == 0) {
+			resolved = CivilTime.daysFromCivil(until, untilIn, 1)
+					* CivilTime.MILLIS_PER_DAY;
+		} else if ((untilInOn & UNTIL_AT_PRESENT) == 0) {
+			// Midnight UTC of the day.
+			resolved = Rule.resolveInOnAtMillis(until, untilIn, untilOnType,
+					untilInOn >> UNTIL_ON_SHIFT, untilOnTypeValue, 0,
+					TimeOfDayType.universal, utcOffset, resolvedSave);
+		} else {
+			resolved = Rule.resolveInOnAtMillis(until, untilIn, untilOnType,
+					untilInOn >> UNTIL_ON_SHIFT, untilOnTypeValue, untilAt,
+					untilAtType, utcOffset, resolvedSave);
+		}
+		return resolved;
+	}
+
 	public void setDstFormat(String dstFormat) {
 		this.dstFormat = dstFormat;
 	}
@@ -341,6 +560,9 @@ public class ZoneDetail implements Serializable {
 	 */
 	public void setRules(List<Rule> rules) {
 		this.rules = rules;
+		yearRulesCache = null;
+		compiledRules = null;
+		adjacentRules = null;
 	}
 
 	public void setSave(int save) {
@@ -348,11 +570,23 @@ public class ZoneDetail implements Serializable {
 	}
 
 	public void setUntil(Integer until) {
-		this.until = until;
+		if (until != null) {
+			this.until = until.intValue();
+			untilInOn |= UNTIL_PRESENT;
+		} else {
+			this.until = 0;
+			untilInOn &= ~UNTIL_PRESENT;
+		}
 	}
 
 	public void setUntilAt(Integer untilAt) {
-		this.untilAt = untilAt;
+		if (untilAt != null) {
+			this.untilAt = untilAt.intValue();
+			untilInOn |= UNTIL_AT_PRESENT;
+		} else {
+			this.untilAt = 0;
+			untilInOn &= ~UNTIL_AT_PRESENT;
+		}
 	}
 
 	public void setUntilAtType(TimeOfDayType untilAtType) {
@@ -360,11 +594,19 @@ public class ZoneDetail implements Serializable {
 	}
 
 	public void setUntilIn(Integer untilIn) {
-		this.untilIn = untilIn;
+		untilInOn &= ~(UNTIL_IN_MASK << UNTIL_IN_SHIFT | UNTIL_IN_PRESENT);
+		if (untilIn != null) {
+			untilInOn |= (untilIn.intValue() & UNTIL_IN_MASK) << UNTIL_IN_SHIFT
+					| UNTIL_IN_PRESENT;
+		}
 	}
 
 	public void setUntilOn(Integer untilOn) {
-		this.untilOn = untilOn;
+		untilInOn &= ~(-1 << UNTIL_ON_SHIFT | UNTIL_ON_PRESENT);
+		if (untilOn != null) {
+			untilInOn |= untilOn.intValue() << UNTIL_ON_SHIFT
+					| UNTIL_ON_PRESENT;
+		}
 	}
 
 	public void setUntilOnType(OnType untilOnType) {
@@ -377,14 +619,178 @@ public class ZoneDetail implements Serializable {
 
 	public void setUtcOffset(int utcOffset) {
 		this.utcOffset = utcOffset;
+		yearRulesCache = null;
 	}
 
 	@Override
 	public String toString() {
-		return "ZoneDetail [until=" + until + ", untilIn=" + untilIn
-				+ ", untilOnType=" + untilOnType + ", untilOn=" + untilOn
-				+ ", untilOnTypeValue=" + untilOnTypeValue + ", untilAt="
-				+ untilAt + ", untilAtType=" + untilAtType + ",save=" + save
-				+ "]";
+		return "ZoneDetail [until=" + getUntil() + ", untilIn="
+				+ getUntilIn() + ", untilOnType=" + untilOnType + ", untilOn="
+				+ getUntilOn() + ", untilOnTypeValue=" + untilOnTypeValue
+				+ ", untilAt=" + getUntilAt() + ", untilAtType=" + untilAtType
+				+ ",save=" + save + "]";
+	}
+
+	/**
+	 * The rules applicable to a year along with the instants they start at,
+	 * held in the order that they are processed i.e. latest rule first.
+	 * Instances are immutable so that they may be shared between threads
+	 * without locking.
+	 */
+	private final class YearRules {
+		/** */
+		private final int year;
+		/** */
+		private final Rule[] rules;
+		/**
+		 * When each rule starts in the year.
+		 */
+		private final long[] starts;
+		/**
+		 * When each rule starts in the first year it applies to.
+		 */
+		private final long[] fromStarts;
+		/**
+		 * When each rule starts in the last year it applies to.
+		 */
+		private final long[] toStarts;
+
+		/**
+		 * Resolve the rules for a year.
+		 * 
+		 * @param year
+		 *            the year.
+		 */
+		YearRules(int year) {
+			this.year = year;
+
+			CompiledRule[] detailRules = getCompiledRules();
+			List<CompiledRule> yearRules = new ArrayList<CompiledRule>(
+					detailRules.length);
+			for (int i = detailRules.length - 1; i >= 0; --i) {
+				CompiledRule rule = detailRules[i];
+				if (rule.yearIsType(year)) {
+					yearRules.add(rule);
+				}
+			}
+
+			int size = yearRules.size();
+			rules = new Rule[size];
+			starts = new long[size];
+			fromStarts = new long[size];
+			toStarts = new long[size];
+			for (int i = 0; i < size; ++i) {
+				CompiledRule rule = yearRules.get(i);
+				rules[i] = rule.getRule();
+				starts[i] = rule.resolveStart(year, utcOffset);
+				fromStarts[i] = rule.resolveStart(rule.getFromYear(),
+						utcOffset);
+				toStarts[i] = rule.resolveStart(rule.getToYear(), utcOffset);
+			}
+		}
+	}
+
+	/**
+	 * For each rule, the rule to use for standard time and for daylight time.
+	 * A rule matching the criteria is used as is. Otherwise the nearest
+	 * matching rule following it is used or, failing that, the nearest one
+	 * preceding it. Instances are immutable so that they may be shared
+	 * between threads without locking.
+	 */
+	private final class AdjacentRules {
+		/**
+		 * The position of each rule.
+		 */
+		private final Map<Rule, Integer> positions;
+		/**
+		 * The standard time rule for each position.
+		 */
+		private final Rule[] standardRules;
+		/**
+		 * The daylight time rule for each position.
+		 */
+		private final Rule[] daylightRules;
+		/**
+		 * The first standard time rule.
+		 */
+		private final Rule firstStandardRule;
+		/**
+		 * The first daylight time rule.
+		 */
+		private final Rule firstDaylightRule;
+
+		/**
+		 * Index the rules.
+		 */
+		AdjacentRules() {
+			List<Rule> detailRules = ZoneDetail.this.rules;
+			int size = detailRules.size();
+			positions = new IdentityHashMap<Rule, Integer>(size);
+			standardRules = new Rule[size];
+			daylightRules = new Rule[size];
+
+			// Sweep backwards noting the nearest following matching rules,
+			// then forwards noting the nearest preceding ones for those
+			// positions with none following.
+			Rule standardRule = null;
+			Rule daylightRule = null;
+			for (int i = size - 1; i >= 0; --i) {
+				Rule rule = detailRules.get(i);
+				positions.put(rule, i);
+				standardRules[i] = standardRule;
+				daylightRules[i] = daylightRule;
+				if (rule.getSave() == 0) {
+					standardRule = rule;
+				} else {
+					daylightRule = rule;
+				}
+			}
+			firstStandardRule = standardRule;
+			firstDaylightRule = daylightRule;
+
+			standardRule = null;
+			daylightRule = null;
+			for (int i = 0; i < size; ++i) {
+				Rule rule = detailRules.get(i);
+				if (standardRules[i] == null) {
+					standardRules[i] = standardRule;
+				}
+				if (daylightRules[i] == null) {
+					daylightRules[i] = daylightRule;
+				}
+				if (rule.getSave() == 0) {
+					standardRule = rule;
+				} else {
+					daylightRule = rule;
+				}
+			}
+		}
+
+		/**
+		 * @param rule
+		 *            the rule in force.
+		 * @param daylight
+		 *            whether a daylight time rule is required.
+		 * @return the rule to use or null if there is none.
+		 */
+		Rule get(Rule rule, boolean daylight) {
+			Rule adjacentRule;
+			Integer position = positions.get(rule);
+			if (position != null) {
+				if (daylight) {
+					adjacentRule = daylightRules[position.intValue()];
+				} else {
+					adjacentRule = standardRules[position.intValue()];
+				}
+			} else {
+				// A rule from elsewhere, so the first matching rule.
+				if (daylight) {
+					adjacentRule = firstDaylightRule;
+				} else {
+					adjacentRule = firstStandardRule;
+				}
+			}
+			return adjacentRule;
+		}
 	}
 }
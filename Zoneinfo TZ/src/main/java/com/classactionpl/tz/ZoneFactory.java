@@ -19,12 +19,21 @@
 
 package com.classactionpl.tz;
 
+import java.io.BufferedReader;
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import org.antlr.runtime.ANTLRInputStream;
+import org.antlr.runtime.ANTLRStringStream;
 import org.antlr.runtime.CharStream;
 import org.antlr.runtime.CommonTokenStream;
+import org.antlr.runtime.RecognitionException;
 import org.antlr.runtime.tree.CommonTreeNodeStream;
 import org.antlr.runtime.tree.Tree;
 import org.apache.log4j.Logger;
@@ -40,6 +49,16 @@ public class ZoneFactory {
 	/** */
 	private static Logger logger = Logger.getLogger(ZoneFactory.class);
 
+	/**
+	 * The number of fields of a zone line that has no until.
+	 */
+	private static final int ZONE_FIELDS = 5;
+
+	/**
+	 * The number of fields of a zone continuation line that has no until.
+	 */
+	private static final int ZONE_CONTINUATION_FIELDS = 3;
+
 	/**
 	 * Given an input stream for a zoneinfo document, populate a map of parsed
 	 * zoneinfo data keyed by the zone ids.
@@ -51,26 +70,254 @@ public class ZoneFactory {
 	 */
 	public void parse(InputStream zoneinfoStream,
 			Map<String, AbstractZone> zones) {
+		parse(Collections.singletonList(zoneinfoStream), zones);
+	}
+
+	/**
+	 * Given input streams for zoneinfo documents, populate a map of parsed
+	 * zoneinfo data keyed by the zone ids. All of the documents are collected
+	 * before any references between them are resolved, so a zone may use the
+	 * rules of any document and a link may be to a zone, or another link, of
+	 * any document, whatever the order of the streams. References that cannot
+	 * be resolved are logged. Zones already in the map are replaced by those
+	 * of the same id rather than changed.
+	 * 
+	 * @param zoneinfoStreams
+	 *            the input streams to read in from.
+	 * @param zones
+	 *            the zones to append to.
+	 */
+	public void parse(List<InputStream> zoneinfoStreams,
+			Map<String, AbstractZone> zones) {
+		ZoneinfoLinker linker = new ZoneinfoLinker(zones);
+		for (InputStream zoneinfoStream : zoneinfoStreams) {
+			try {
+				linker.add(collect(zoneinfoStream));
+			} catch (Throwable t) {
+				logger.error("During zoneinfo parsing:", t);
+			}
+		}
+		link(linker);
+	}
+
+	/**
+	 * Parse and walk a zoneinfo document without resolving the references
+	 * that it makes.
+	 * 
+	 * @param zoneinfoStream
+	 *            the input stream to read in from.
+	 * @return the rules, zones and links declared.
+	 * @throws IOException
+	 *             if the stream cannot be read.
+	 * @throws RecognitionException
+	 *             if the document cannot be walked.
+	 */
+	ZoneinfoDocument collect(InputStream zoneinfoStream) throws IOException,
+			RecognitionException {
+		CharStream input = new ANTLRInputStream(zoneinfoStream);
+		ZoneinfoLexer lex = new ZoneinfoLexer(input);
+
+		CommonTokenStream tokens = new CommonTokenStream(lex);
+		ZoneinfoParser parser = new ZoneinfoParser(tokens);
+		ZoneinfoParser.line_return root = parser.line();
+		if (logger.isTraceEnabled()) {
+			logger.trace("tree=" + ((Tree) root.tree).toStringTree());
+		}
+
+		CommonTreeNodeStream nodes = new CommonTreeNodeStream(root.tree);
+		nodes.setTokenStream(tokens);
+		ZoneinfoWalker walker = new ZoneinfoWalker(nodes);
+		walker.line();
+		walker.resolveForwardRuleReferences();
+		return walker.getDocument();
+	}
+
+	/**
+	 * Resolve the references of the documents added to a linker, logging
+	 * those that cannot be resolved.
+	 * 
+	 * @param linker
+	 *            the linker.
+	 */
+	private static void link(ZoneinfoLinker linker) {
+		ZoneinfoLinker.Report report = linker.link();
+		if (!report.isResolved()) {
+			logger.warn("Unresolved zoneinfo references: " + report);
+		}
+	}
+
+	/**
+	 * Given an input stream for a zoneinfo document, populate a map of parsed
+	 * zoneinfo data keyed by the zone ids, one record at a time. A record is a
+	 * rule line, a link line or a zone line along with its continuation lines.
+	 * Each record is parsed and walked as soon as it has been read, so that
+	 * only the tokens and tree of one record are held at a time rather than
+	 * those of the entire document. The zones produced are the same as those
+	 * of parse.
+	 * <p>
+	 * Links and references to rules are resolved once the entire document
+	 * has been read.
+	 * 
+	 * @param zoneinfoStream
+	 *            the input stream to read in from.
+	 * @param zones
+	 *            the zones to append to.
+	 */
+	public void parseStreaming(InputStream zoneinfoStream,
+			Map<String, AbstractZone> zones) {
 		try {
-			CharStream input = new ANTLRInputStream(zoneinfoStream);
-			ZoneinfoLexer lex = new ZoneinfoLexer(input);
-
-			CommonTokenStream tokens = new CommonTokenStream(lex);
-			ZoneinfoParser parser = new ZoneinfoParser(tokens);
-			ZoneinfoParser.line_return root = parser.line();
-			if (logger.isTraceEnabled()) {
-				logger.trace("tree=" + ((Tree) root.tree).toStringTree());
+			BufferedReader reader = new BufferedReader(new InputStreamReader(
+					zoneinfoStream));
+			ZoneinfoWalker walker = null;
+			StringBuilder zoneRecord = null;
+
+			String line;
+			while ((line = reader.readLine()) != null) {
+				String[] fields = splitFields(line);
+				if (zoneRecord != null) {
+					// Blank and comment lines may separate continuation lines.
+					if (fields.length > 0) {
+						zoneRecord.append(line).append('\n');
+						if (fields.length <= ZONE_CONTINUATION_FIELDS) {
+							walker = parseRecord(zoneRecord.toString(), walker);
+							zoneRecord = null;
+						}
+					}
+				} else if (fields.length > 0) {
+					if (fields[0].equals("Zone")) {
+						zoneRecord = new StringBuilder(line).append('\n');
+						if (fields.length <= ZONE_FIELDS) {
+							walker = parseRecord(zoneRecord.toString(), walker);
+							zoneRecord = null;
+						}
+					} else {
+						walker = parseRecord(line + '\n', walker);
+					}
+				}
+			}
+			if (zoneRecord != null) {
+				walker = parseRecord(zoneRecord.toString(), walker);
 			}
 
-			CommonTreeNodeStream nodes = new CommonTreeNodeStream(root.tree);
-			nodes.setTokenStream(tokens);
-			ZoneinfoWalker walker = new ZoneinfoWalker(nodes);
-			walker.setZones(zones);
-			walker.line();
+			if (walker != null) {
+				walker.resolveForwardRuleReferences();
+				ZoneinfoLinker linker = new ZoneinfoLinker(zones);
+				linker.add(walker.getDocument());
+				link(linker);
+			}
 
 		} catch (Throwable t) {
 			logger.error("During zoneinfo parsing:", t);
 		}
+	}
 
+	/**
+	 * Given an input stream for a zoneinfo document, populate a map of parsed
+	 * zoneinfo data keyed by the zone ids, in a single pass. Rules, zones and
+	 * links are built directly as each line is read, rather than via the
+	 * grammar's tokens and trees. The zones produced are the same as those of
+	 * parse.
+	 * 
+	 * @param zoneinfoStream
+	 *            the input stream to read in from.
+	 * @param zones
+	 *            the zones to append to.
+	 */
+	public void parseSinglePass(InputStream zoneinfoStream,
+			Map<String, AbstractZone> zones) {
+		try {
+			ZoneinfoDocument document = new ZoneinfoLineParser()
+					.parse(new InputStreamReader(zoneinfoStream));
+			ZoneinfoLinker linker = new ZoneinfoLinker(zones);
+			linker.add(document);
+			link(linker);
+
+		} catch (Throwable t) {
+			logger.error("During zoneinfo parsing:", t);
+		}
+	}
+
+	/**
+	 * Split a zoneinfo line into its fields, ignoring any comment.
+	 * 
+	 * @param line
+	 *            the line.
+	 * @return the fields, none if the line is blank or only a comment.
+	 */
+	private static String[] splitFields(String line) {
+		int commentIndex = line.indexOf('#');
+		String content;
+		if (commentIndex >= 0) {
+			content = line.substring(0, commentIndex).trim();
+		} else {
+			content = line.trim();
+		}
+		String[] fields;
+		if (content.length() > 0) {
+			fields = content.split("[ \t]+");
+		} else {
+			fields = new String[0];
+		}
+		return fields;
+	}
+
+	/**
+	 * Parse and walk a single record. The walker is retained between records
+	 * so that the rules of earlier records are available to later ones.
+	 * 
+	 * @param record
+	 *            the record's lines.
+	 * @param walker
+	 *            the walker of previous records or null if there is none.
+	 * @return the walker.
+	 * @throws RecognitionException
+	 *             if the record cannot be walked.
+	 */
+	private ZoneinfoWalker parseRecord(String record, ZoneinfoWalker walker)
+			throws RecognitionException {
+		CharStream input = new ANTLRStringStream(record);
+		ZoneinfoLexer lex = new ZoneinfoLexer(input);
+
+		CommonTokenStream tokens = new CommonTokenStream(lex);
+		ZoneinfoParser parser = new ZoneinfoParser(tokens);
+		ZoneinfoParser.line_return root = parser.line();
+		if (logger.isTraceEnabled()) {
+			logger.trace("tree=" + ((Tree) root.tree).toStringTree());
+		}
+
+		CommonTreeNodeStream nodes = new CommonTreeNodeStream(root.tree);
+		nodes.setTokenStream(tokens);
+		ZoneinfoWalker recordWalker = walker;
+		if (recordWalker == null) {
+			recordWalker = new ZoneinfoWalker(nodes);
+		} else {
+			recordWalker.setTreeNodeStream(nodes);
+		}
+		recordWalker.line();
+		return recordWalker;
+	}
+
+	/**
+	 * Given input streams for zoneinfo documents, add their zones to those of
+	 * a registry. The zones are parsed before being published so that the
+	 * registry's lookups resolve against either the previous zones or all of
+	 * the new ones. The streams may be given in any order.
+	 * <p>
+	 * The zones published are those of the registry overlaid with those
+	 * parsed. Zones that the registry already publishes are never changed, as
+	 * readers may be using them; links of the registry are instead replaced
+	 * with ones to the zones that replace what they link to.
+	 * 
+	 * @param registry
+	 *            the registry to load into.
+	 * @param zoneinfoStreams
+	 *            the input streams to read in from.
+	 */
+	public void load(ZoneRegistry registry, InputStream... zoneinfoStreams) {
+		Map<String, AbstractZone> zones = new HashMap<String, AbstractZone>(
+				registry.getZones());
+		parse(Arrays.asList(zoneinfoStreams), zones);
+		ZoneinfoLinker.retargetLinks(zones);
+		registry.setZones(zones);
 	}
 }
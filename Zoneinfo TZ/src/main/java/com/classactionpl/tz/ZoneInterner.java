@@ -0,0 +1,388 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.classactionpl.tz;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Shares identical zone details, rules, rule lists and strings between zones
+ * once they have been parsed. Zones are parsed with their own copies of
+ * these, so sharing them reduces the memory held for a set of zones,
+ * particularly where several sets of zones are held e.g. one per version of
+ * zoneinfo data. Using the same interner for each set shares data between
+ * the sets.
+ * <p>
+ * Details and rules are shared by replacing references to them, so zones
+ * should be interned once they are parsed and before they are used. An
+ * interner holds on to what it has shared and is not thread safe; it may be
+ * discarded once the zones of interest have been interned.
+ *
+ * @author huntc
+ *
+ */
+public class ZoneInterner {
+
+	/**
+	 * The approximate size in bytes of a zone detail.
+	 */
+	private static final int DETAIL_BYTES = 80;
+
+	/**
+	 * The approximate size in bytes of a rule.
+	 */
+	private static final int RULE_BYTES = 72;
+
+	/**
+	 * The approximate size in bytes of a rule list, excluding its elements.
+	 */
+	private static final int RULE_LIST_BYTES = 40;
+
+	/**
+	 * The approximate size in bytes of a reference held by a rule list.
+	 */
+	private static final int REFERENCE_BYTES = 4;
+
+	/**
+	 * The approximate size in bytes of a string, excluding its characters.
+	 */
+	private static final int STRING_BYTES = 40;
+
+	/**
+	 * The approximate size in bytes of a string's character.
+	 */
+	private static final int CHAR_BYTES = 2;
+
+	/**
+	 * Canonical details keyed by their values.
+	 */
+	private final Map<List<Object>, ZoneDetail> details = new HashMap<List<Object>, ZoneDetail>();
+
+	/**
+	 * Canonical rules keyed by their values.
+	 */
+	private final Map<List<Object>, Rule> rules = new HashMap<List<Object>, Rule>();
+
+	/**
+	 * Canonical rule lists keyed by themselves. As rules do not override
+	 * equality, lists of canonical rules are equal only if they hold the same
+	 * rules.
+	 */
+	private final Map<List<Rule>, List<Rule>> ruleLists = new HashMap<List<Rule>, List<Rule>>();
+
+	/**
+	 * The canonical detail for each detail encountered.
+	 */
+	private final Map<ZoneDetail, ZoneDetail> internedDetails = new IdentityHashMap<ZoneDetail, ZoneDetail>();
+
+	/**
+	 * The canonical rule for each rule encountered.
+	 */
+	private final Map<Rule, Rule> internedRules = new IdentityHashMap<Rule, Rule>();
+
+	/**
+	 * The canonical rule list for each rule list encountered.
+	 */
+	private final Map<List<Rule>, List<Rule>> internedRuleLists = new IdentityHashMap<List<Rule>, List<Rule>>();
+
+	/**
+	 * The strings encountered.
+	 */
+	private final Map<String, String> internedStrings = new IdentityHashMap<String, String>();
+
+	/**
+	 * The report for the zones currently being interned.
+	 */
+	private Report report;
+
+	/**
+	 * Share the data of a set of zones with each other and with any zones
+	 * previously interned.
+	 *
+	 * @param zones
+	 *            the zones to intern, keyed by their ids.
+	 * @return a report of what was shared.
+	 */
+	public Report intern(Map<String, AbstractZone> zones) {
+		report = new Report();
+		try {
+			for (AbstractZone zone : zones.values()) {
+				if (zone instanceof Zone) {
+					internZone((Zone) zone);
+				}
+			}
+			return report;
+		} finally {
+			report = null;
+		}
+	}
+
+	/**
+	 * Share the details of a zone.
+	 *
+	 * @param zone
+	 *            the zone.
+	 */
+	private void internZone(Zone zone) {
+		List<ZoneDetail> zoneDetails = zone.getDetails();
+		for (int i = 0; i < zoneDetails.size(); ++i) {
+			ZoneDetail detail = zoneDetails.get(i);
+			ZoneDetail internedDetail = internDetail(detail);
+			if (internedDetail != detail) {
+				zone.replaceDetail(i, internedDetail);
+			}
+		}
+	}
+
+	/**
+	 * Obtain the canonical form of a detail.
+	 *
+	 * @param detail
+	 *            the detail.
+	 * @return the canonical detail.
+	 */
+	private ZoneDetail internDetail(ZoneDetail detail) {
+		ZoneDetail internedDetail = internedDetails.get(detail);
+		if (internedDetail == null) {
+			List<Rule> detailRules = detail.getRules();
+			List<Rule> internedDetailRules = internRuleList(detailRules);
+			String format = internString(detail.getFormat());
+			String dstFormat = internString(detail.getDstFormat());
+
+			List<Object> key = Arrays.asList(new Object[] {
+					detail.getUtcOffset(), internedDetailRules,
+					detail.getSave(), format, dstFormat, detail.getUntil(),
+					detail.getUntilIn(), detail.getUntilOnType(),
+					detail.getUntilOn(), detail.getUntilOnTypeValue(),
+					detail.getUntilAt(), detail.getUntilAtType() });
+			internedDetail = details.get(key);
+			if (internedDetail == null) {
+				if (internedDetailRules != detailRules) {
+					detail.setRules(internedDetailRules);
+				}
+				detail.setFormat(format);
+				detail.setDstFormat(dstFormat);
+				internedDetail = detail;
+				details.put(key, internedDetail);
+			} else {
+				++report.sharedDetails;
+				report.bytesSaved += DETAIL_BYTES;
+			}
+			internedDetails.put(detail, internedDetail);
+			++report.details;
+		}
+		return internedDetail;
+	}
+
+	/**
+	 * Obtain the canonical form of a rule list.
+	 *
+	 * @param ruleList
+	 *            the rule list or null.
+	 * @return the canonical rule list or null.
+	 */
+	private List<Rule> internRuleList(List<Rule> ruleList) {
+		List<Rule> internedRuleList;
+		if (ruleList != null) {
+			internedRuleList = internedRuleLists.get(ruleList);
+			if (internedRuleList == null) {
+				List<Rule> canonicalRules = new ArrayList<Rule>(ruleList.size());
+				boolean rulesShared = false;
+				for (Rule rule : ruleList) {
+					Rule internedRule = internRule(rule);
+					rulesShared |= internedRule != rule;
+					canonicalRules.add(internedRule);
+				}
+				if (!rulesShared) {
+					canonicalRules = ruleList;
+				}
+
+				internedRuleList = ruleLists.get(canonicalRules);
+				if (internedRuleList == null) {
+					internedRuleList = canonicalRules;
+					ruleLists.put(canonicalRules, canonicalRules);
+				} else {
+					++report.sharedRuleLists;
+					report.bytesSaved += RULE_LIST_BYTES + REFERENCE_BYTES
+							* ruleList.size();
+				}
+				internedRuleLists.put(ruleList, internedRuleList);
+				++report.ruleLists;
+			}
+		} else {
+			internedRuleList = null;
+		}
+		return internedRuleList;
+	}
+
+	/**
+	 * Obtain the canonical form of a rule.
+	 *
+	 * @param rule
+	 *            the rule.
+	 * @return the canonical rule.
+	 */
+	private Rule internRule(Rule rule) {
+		Rule internedRule = internedRules.get(rule);
+		if (internedRule == null) {
+			String name = internString(rule.getName());
+			String letters = internString(rule.getLetters());
+
+			List<Object> key = Arrays.asList(new Object[] { name,
+					rule.getFromType(), rule.getFrom(), rule.getToType(),
+					rule.isToTypeOnly(), rule.getTo(), rule.getType(),
+					rule.getIn(), rule.getOnType(), rule.getOn(),
+					rule.getOnTypeValue(), rule.getAt(), rule.getAtType(),
+					rule.getSave(), letters });
+			internedRule = rules.get(key);
+			if (internedRule == null) {
+				rule.setName(name);
+				rule.setLetters(letters);
+				internedRule = rule;
+				rules.put(key, internedRule);
+			} else {
+				++report.sharedRules;
+				report.bytesSaved += RULE_BYTES;
+			}
+			internedRules.put(rule, internedRule);
+			++report.rules;
+		}
+		return internedRule;
+	}
+
+	/**
+	 * Obtain the canonical form of a string.
+	 *
+	 * @param string
+	 *            the string or null.
+	 * @return the canonical string or null.
+	 */
+	private String internString(String string) {
+		String internedString;
+		if (string != null) {
+			internedString = internedStrings.get(string);
+			if (internedString == null) {
+				internedString = string.intern();
+				if (internedString != string) {
+					++report.sharedStrings;
+					report.bytesSaved += STRING_BYTES + CHAR_BYTES
+							* string.length();
+				}
+				internedStrings.put(string, internedString);
+			}
+		} else {
+			internedString = null;
+		}
+		return internedString;
+	}
+
+	/**
+	 * What was shared when interning a set of zones. Byte counts are
+	 * estimates based on typical object sizes.
+	 */
+	public static final class Report {
+		/** */
+		private int details;
+		/** */
+		private int sharedDetails;
+		/** */
+		private int rules;
+		/** */
+		private int sharedRules;
+		/** */
+		private int ruleLists;
+		/** */
+		private int sharedRuleLists;
+		/** */
+		private int sharedStrings;
+		/** */
+		private long bytesSaved;
+
+		/**
+		 * @return the approximate number of bytes no longer held.
+		 */
+		public long getBytesSaved() {
+			return bytesSaved;
+		}
+
+		/**
+		 * @return the number of distinct details encountered.
+		 */
+		public int getDetails() {
+			return details;
+		}
+
+		/**
+		 * @return the number of distinct rule lists encountered.
+		 */
+		public int getRuleLists() {
+			return ruleLists;
+		}
+
+		/**
+		 * @return the number of distinct rules encountered.
+		 */
+		public int getRules() {
+			return rules;
+		}
+
+		/**
+		 * @return the number of details replaced by an identical one.
+		 */
+		public int getSharedDetails() {
+			return sharedDetails;
+		}
+
+		/**
+		 * @return the number of rule lists replaced by an identical one.
+		 */
+		public int getSharedRuleLists() {
+			return sharedRuleLists;
+		}
+
+		/**
+		 * @return the number of rules replaced by an identical one.
+		 */
+		public int getSharedRules() {
+			return sharedRules;
+		}
+
+		/**
+		 * @return the number of strings replaced by an identical one.
+		 */
+		public int getSharedStrings() {
+			return sharedStrings;
+		}
+
+		@Override
+		public String toString() {
+			return "Report [details=" + details + ", sharedDetails="
+					+ sharedDetails + ", rules=" + rules + ", sharedRules="
+					+ sharedRules + ", ruleLists=" + ruleLists
+					+ ", sharedRuleLists=" + sharedRuleLists
+					+ ", sharedStrings=" + sharedStrings + ", bytesSaved="
+					+ bytesSaved + "]";
+		}
+	}
+}
@@ -0,0 +1,265 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.classactionpl.tz;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A thread safe map of zone ids to zones that versions the changes made to
+ * it. Anything derived from the map can note the version it was derived from
+ * and later tell whether it is out of date. The version is advanced after
+ * each change is made. Versions are drawn from a sequence shared by all maps
+ * so that no two maps, nor two states of a map, have the same version.
+ *
+ * @author huntc
+ *
+ */
+final class ZoneMap extends AbstractMap<String, AbstractZone> implements
+		ConcurrentMap<String, AbstractZone> {
+
+	/**
+	 * The zones.
+	 */
+	private final ConcurrentHashMap<String, AbstractZone> zones;
+
+	/**
+	 * The sequence that versions are drawn from.
+	 */
+	private static final AtomicLong VERSIONS = new AtomicLong();
+
+	/**
+	 * The version of the map.
+	 */
+	private volatile long version = VERSIONS.incrementAndGet();
+
+	/**
+	 * The entries, created upon first use.
+	 */
+	private Set<Map.Entry<String, AbstractZone>> entrySet;
+
+	/**
+	 * Construct the map.
+	 *
+	 * @param initialCapacity
+	 *            the number of zones expected.
+	 */
+	ZoneMap(int initialCapacity) {
+		zones = new ConcurrentHashMap<String, AbstractZone>(initialCapacity);
+	}
+
+	/**
+	 * Construct the map holding a copy of some zones.
+	 *
+	 * @param zones
+	 *            the zones.
+	 */
+	ZoneMap(Map<String, AbstractZone> zones) {
+		this.zones = new ConcurrentHashMap<String, AbstractZone>(zones);
+	}
+
+	/**
+	 * @return the version of the map.
+	 */
+	long getVersion() {
+		return version;
+	}
+
+	/**
+	 * Advance the version of the map following a change.
+	 */
+	private void changed() {
+		version = VERSIONS.incrementAndGet();
+	}
+
+	@Override
+	public void clear() {
+		zones.clear();
+		changed();
+	}
+
+	@Override
+	public boolean containsKey(Object key) {
+		return zones.containsKey(key);
+	}
+
+	@Override
+	public Set<Map.Entry<String, AbstractZone>> entrySet() {
+		Set<Map.Entry<String, AbstractZone>> resolvedEntrySet = entrySet;
+		if (resolvedEntrySet == null) {
+			resolvedEntrySet = new EntrySet();
+			entrySet = resolvedEntrySet;
+		}
+		return resolvedEntrySet;
+	}
+
+	@Override
+	public AbstractZone get(Object key) {
+		return zones.get(key);
+	}
+
+	@Override
+	public AbstractZone put(String key, AbstractZone value) {
+		AbstractZone previous = zones.put(key, value);
+		changed();
+		return previous;
+	}
+
+	@Override
+	public void putAll(Map<? extends String, ? extends AbstractZone> m) {
+		zones.putAll(m);
+		changed();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public AbstractZone putIfAbsent(String key, AbstractZone value) {
+		AbstractZone previous = zones.putIfAbsent(key, value);
+		if (previous == null) {
+			changed();
+		}
+		return previous;
+	}
+
+	@Override
+	public AbstractZone remove(Object key) {
+		AbstractZone previous = zones.remove(key);
+		if (previous != null) {
+			changed();
+		}
+		return previous;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public boolean remove(Object key, Object value) {
+		boolean removed = zones.remove(key, value);
+		if (removed) {
+			changed();
+		}
+		return removed;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public AbstractZone replace(String key, AbstractZone value) {
+		AbstractZone previous = zones.replace(key, value);
+		if (previous != null) {
+			changed();
+		}
+		return previous;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public boolean replace(String key, AbstractZone oldValue,
+			AbstractZone newValue) {
+		boolean replaced = zones.replace(key, oldValue, newValue);
+		if (replaced) {
+			changed();
+		}
+		return replaced;
+	}
+
+	@Override
+	public int size() {
+		return zones.size();
+	}
+
+	/**
+	 * The entries of the map, counting removals made through them.
+	 */
+	private final class EntrySet extends
+			AbstractSet<Map.Entry<String, AbstractZone>> {
+
+		@Override
+		public void clear() {
+			ZoneMap.this.clear();
+		}
+
+		@Override
+		public Iterator<Map.Entry<String, AbstractZone>> iterator() {
+			final Iterator<Map.Entry<String, AbstractZone>> iterator = zones
+					.entrySet().iterator();
+			return new Iterator<Map.Entry<String, AbstractZone>>() {
+
+				public boolean hasNext() {
+					return iterator.hasNext();
+				}
+
+				public Map.Entry<String, AbstractZone> next() {
+					final Map.Entry<String, AbstractZone> entry = iterator
+							.next();
+					return new Map.Entry<String, AbstractZone>() {
+
+						public String getKey() {
+							return entry.getKey();
+						}
+
+						public AbstractZone getValue() {
+							return entry.getValue();
+						}
+
+						public AbstractZone setValue(AbstractZone value) {
+							AbstractZone previous = entry.setValue(value);
+							changed();
+							return previous;
+						}
+
+						@Override
+						public boolean equals(Object o) {
+							return entry.equals(o);
+						}
+
+						@Override
+						public int hashCode() {
+							return entry.hashCode();
+						}
+
+						@Override
+						public String toString() {
+							return entry.toString();
+						}
+					};
+				}
+
+				public void remove() {
+					iterator.remove();
+					changed();
+				}
+			};
+		}
+
+		@Override
+		public int size() {
+			return zones.size();
+		}
+	}
+}
@@ -0,0 +1,452 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.classactionpl.tz;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A set of zones along with the time zones and indexes derived from them.
+ * Each registry is independent of the others, so several sets of zones may be
+ * held at once e.g. one per release of zoneinfo data. The zones, their
+ * compiled transitions and the time zones obtained for them belong to the
+ * registry that they were published to. The static methods of
+ * ZoneinfoTimeZone use the default registry.
+ * <p>
+ * This class is entirely thread safe. Lookups resolve against the zones as
+ * they were when the lookup began.
+ *
+ * @author huntc
+ *
+ */
+public class ZoneRegistry {
+
+	/**
+	 * The default number of time zones expecting to be handled.
+	 */
+	private static final int ZONES_ALLOCATION = 500;
+
+	/** */
+	private static final int MILLIS_PER_SECOND = 1000;
+
+	/**
+	 * The registry used by the static methods of ZoneinfoTimeZone.
+	 */
+	private static final ZoneRegistry DEFAULT_REGISTRY = new ZoneRegistry();
+
+	/**
+	 * A map of time zone names to time zones that are available. The map is
+	 * replaced as a whole when new zones are published.
+	 */
+	private volatile ZoneMap zones;
+
+	/**
+	 * The ids of the zones for each raw offset in force, created upon first
+	 * use and replaced once out of date.
+	 */
+	private volatile OffsetIndex offsetIndex;
+
+	/**
+	 * The sorted ids of the zones, created upon first use and replaced once
+	 * the zones change.
+	 */
+	private volatile IdSnapshot idSnapshot;
+
+	/**
+	 * Construct an empty registry.
+	 */
+	public ZoneRegistry() {
+		zones = new ZoneMap(ZONES_ALLOCATION);
+	}
+
+	/**
+	 * Construct a registry holding some zones.
+	 * 
+	 * @param zones
+	 *            the zones keyed by their ids. The map is copied.
+	 */
+	public ZoneRegistry(Map<String, AbstractZone> zones) {
+		this.zones = new ZoneMap(zones);
+	}
+
+	/**
+	 * @return the registry used by the static methods of ZoneinfoTimeZone.
+	 */
+	public static ZoneRegistry getDefault() {
+		return DEFAULT_REGISTRY;
+	}
+
+	/**
+	 * Get the available ids. The ids are sorted.
+	 * 
+	 * @return a copy of the ids.
+	 */
+	public String[] getAvailableIDs() {
+		return resolveIdSnapshot().ids.clone();
+	}
+
+	/**
+	 * Get the available ids without copying them. The list is sorted and
+	 * does not change; a new list is returned once the zones change.
+	 * 
+	 * @return the ids.
+	 * @see #getAvailableIDsVersion()
+	 */
+	public List<String> getAvailableIDList() {
+		return resolveIdSnapshot().idList;
+	}
+
+	/**
+	 * Get the version of the available ids. The version differs whenever the
+	 * zones have changed since a previous call, so callers may skip work when
+	 * it has not. No two registries have the same version.
+	 * 
+	 * @return the version.
+	 */
+	public long getAvailableIDsVersion() {
+		return zones.getVersion();
+	}
+
+	/**
+	 * @return a snapshot of the ids of the current zones.
+	 */
+	private IdSnapshot resolveIdSnapshot() {
+		ZoneMap currentZones = zones;
+		IdSnapshot snapshot = idSnapshot;
+		if (snapshot == null || snapshot.version != currentZones.getVersion()) {
+			snapshot = new IdSnapshot(currentZones);
+			idSnapshot = snapshot;
+		}
+		return snapshot;
+	}
+
+	/**
+	 * Get the available ids given an offset.
+	 * 
+	 * @param rawOffset
+	 *            the raw offset in milliseconds.
+	 * @return the ids of the zones with the raw offset now in force.
+	 */
+	public String[] getAvailableIDs(int rawOffset) {
+		long now = System.currentTimeMillis();
+		ZoneMap currentZones = zones;
+		OffsetIndex index = offsetIndex;
+		if (index == null || !index.isCurrent(currentZones.getVersion(), now)) {
+			index = new OffsetIndex(currentZones, now);
+			offsetIndex = index;
+		}
+		return index.getIds(rawOffset / MILLIS_PER_SECOND);
+	}
+
+	/**
+	 * Get a time zone. The time zone is shared with other callers of this
+	 * registry and so may not be changed; clone it to obtain one that may be.
+	 * 
+	 * @param id
+	 *            the id.
+	 * @return the time zone or null if there is none with the id.
+	 */
+	public ZoneinfoTimeZone getTimeZone(String id) {
+		IdSnapshot snapshot = resolveIdSnapshot();
+		return snapshot.getTimeZone(Arrays.binarySearch(snapshot.ids, id));
+	}
+
+	/**
+	 * Get a time zone without requiring a string for its id. The time zone is
+	 * shared with other callers of this registry and so may not be changed;
+	 * clone it to obtain one that may be.
+	 * 
+	 * @param id
+	 *            the id.
+	 * @return the time zone or null if there is none with the id.
+	 */
+	public ZoneinfoTimeZone getTimeZone(CharSequence id) {
+		IdSnapshot snapshot = resolveIdSnapshot();
+		String[] ids = snapshot.ids;
+		int low = 0;
+		int high = ids.length - 1;
+		int index = -1;
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			int comparison = compare(ids[mid], id);
+			if (comparison < 0) {
+				low = mid + 1;
+			} else if (comparison > 0) {
+				high = mid - 1;
+			} else {
+				index = mid;
+				break;
+			}
+		}
+		return snapshot.getTimeZone(index);
+	}
+
+	/**
+	 * Compare an id with a sequence of characters in the same manner as
+	 * String.compareTo.
+	 * 
+	 * @param id
+	 *            the id.
+	 * @param chars
+	 *            the characters.
+	 * @return less than, equal to or greater than zero as the id is less
+	 *         than, equal to or greater than the characters.
+	 */
+	private static int compare(String id, CharSequence chars) {
+		int length = Math.min(id.length(), chars.length());
+		int difference = 0;
+		for (int i = 0; i < length && difference == 0; ++i) {
+			difference = id.charAt(i) - chars.charAt(i);
+		}
+		if (difference == 0) {
+			difference = id.length() - chars.length();
+		}
+		return difference;
+	}
+
+	/**
+	 * Get all of the zone objects. Changes made to the map take effect
+	 * immediately, so zones being parsed are visible before they are
+	 * complete; use setZones to publish a set of zones as a whole.
+	 * 
+	 * @return the zone objects.
+	 */
+	public Map<String, AbstractZone> getZones() {
+		return zones;
+	}
+
+	/**
+	 * Replace all of the zone objects with those of a map in a single step.
+	 * The zones are typically parsed into a map of their own beforehand, and
+	 * should not be changed once published. Until this method returns,
+	 * lookups resolve against the previous zones; thereafter they resolve
+	 * against the new ones. Time zones already obtained continue to use the
+	 * zones that they were obtained from.
+	 * 
+	 * @param zones
+	 *            the zones keyed by their ids. The map is copied.
+	 */
+	public void setZones(Map<String, AbstractZone> zones) {
+		this.zones = new ZoneMap(zones);
+	}
+
+	/**
+	 * The sorted ids of the zones as of a version of them, along with the
+	 * time zones of the registry for them. Instances are immutable so that
+	 * they may be published to other threads without locking.
+	 */
+	private final class IdSnapshot {
+		/**
+		 * The version of the zones.
+		 */
+		private final long version;
+		/**
+		 * The ids.
+		 */
+		private final String[] ids;
+		/**
+		 * An unmodifiable view of the ids.
+		 */
+		private final List<String> idList;
+		/**
+		 * The zone of each id, or null if removed while taking the snapshot.
+		 */
+		private final AbstractZone[] zones;
+		/**
+		 * The shared time zone of each id, created upon first use.
+		 */
+		private final AtomicReferenceArray<ZoneinfoTimeZone> timeZones;
+
+		/**
+		 * Take a snapshot of the ids.
+		 * 
+		 * @param registeredZones
+		 *            the zones to take the ids of.
+		 */
+		IdSnapshot(ZoneMap registeredZones) {
+			// The version is noted first so that changes made while taking
+			// the snapshot cause it to be taken again.
+			version = registeredZones.getVersion();
+			Set<String> keySet = registeredZones.keySet();
+			ids = keySet.toArray(new String[keySet.size()]);
+			Arrays.sort(ids);
+			idList = Collections.unmodifiableList(Arrays.asList(ids));
+
+			zones = new AbstractZone[ids.length];
+			for (int i = 0; i < ids.length; ++i) {
+				zones[i] = registeredZones.get(ids[i]);
+			}
+			timeZones = new AtomicReferenceArray<ZoneinfoTimeZone>(ids.length);
+		}
+
+		/**
+		 * @param index
+		 *            the position of an id, or a negative value if there is
+		 *            none.
+		 * @return the shared time zone for the id or null if there is none.
+		 */
+		ZoneinfoTimeZone getTimeZone(int index) {
+			ZoneinfoTimeZone timeZone;
+			if (index >= 0 && zones[index] != null) {
+				timeZone = timeZones.get(index);
+				if (timeZone == null) {
+					timeZone = ZoneinfoTimeZone.createShared(zones[index],
+							ZoneRegistry.this);
+					if (!timeZones.compareAndSet(index, null, timeZone)) {
+						timeZone = timeZones.get(index);
+					}
+				}
+			} else {
+				timeZone = null;
+			}
+			return timeZone;
+		}
+	}
+
+	/**
+	 * The ids of the zones keyed by the raw offset in force for them at a
+	 * given time. The index remains current until the zones of the registry
+	 * change or the raw offset of any zone changes. Instances are immutable
+	 * so that they may be published to other threads without locking.
+	 */
+	private static final class OffsetIndex {
+		/**
+		 * The version of the zones indexed.
+		 */
+		private final long version;
+		/**
+		 * The time from which the raw offset of a zone may differ.
+		 */
+		private final long validUntil;
+		/**
+		 * The ids for each raw offset in seconds.
+		 */
+		private final Map<Integer, String[]> ids;
+
+		/**
+		 * Index the zones.
+		 * 
+		 * @param zones
+		 *            the zones.
+		 * @param when
+		 *            the time at which raw offsets are to be indexed.
+		 */
+		OffsetIndex(ZoneMap zones, long when) {
+			// The version is noted first so that changes made while indexing
+			// cause a subsequent rebuild.
+			version = zones.getVersion();
+
+			long resolvedValidUntil = Long.MAX_VALUE;
+			Map<Integer, Collection<String>> idLists = new HashMap<Integer, Collection<String>>();
+			for (AbstractZone zone : zones.values()) {
+				ZoneDetail zoneDetail;
+				ZoneTransitions transitions = zone.getTransitions();
+				if (transitions.covers(when)) {
+					int index = transitions.indexOf(when);
+					zoneDetail = transitions.getDetail(index);
+					resolvedValidUntil = Math.min(resolvedValidUntil,
+							nextRawOffsetChange(transitions, index));
+				} else {
+					zoneDetail = zone.resolveDetail(when);
+				}
+
+				if (zoneDetail != null) {
+					Integer rawOffset = Integer.valueOf(zoneDetail
+							.getUtcOffset());
+					Collection<String> idList = idLists.get(rawOffset);
+					if (idList == null) {
+						idList = new ArrayList<String>();
+						idLists.put(rawOffset, idList);
+					}
+					idList.add(zone.getName());
+				}
+			}
+			validUntil = resolvedValidUntil;
+
+			ids = new HashMap<Integer, String[]>(idLists.size() * 2);
+			for (Map.Entry<Integer, Collection<String>> entry : idLists
+					.entrySet()) {
+				Collection<String> idList = entry.getValue();
+				ids.put(entry.getKey(), idList.toArray(new String[idList
+						.size()]));
+			}
+		}
+
+		/**
+		 * Find when the raw offset next changes after an interval.
+		 * 
+		 * @param transitions
+		 *            the transitions of a zone.
+		 * @param index
+		 *            the interval.
+		 * @return the time of the change or the horizon of the transitions if
+		 *         there is none.
+		 */
+		private static long nextRawOffsetChange(ZoneTransitions transitions,
+				int index) {
+			long change = transitions.getHorizon();
+			ZoneDetail zoneDetail = transitions.getDetail(index);
+			for (int i = index + 1; i < transitions.size(); ++i) {
+				ZoneDetail nextZoneDetail = transitions.getDetail(i);
+				if (zoneDetail == null || nextZoneDetail == null
+						|| nextZoneDetail.getUtcOffset() != zoneDetail
+								.getUtcOffset()) {
+					change = transitions.getTransition(i);
+					break;
+				}
+			}
+			return change;
+		}
+
+		/**
+		 * @param rawOffset
+		 *            the raw offset in seconds.
+		 * @return a copy of the ids of the zones with the raw offset.
+		 */
+		String[] getIds(int rawOffset) {
+			String[] rawOffsetIds = ids.get(Integer.valueOf(rawOffset));
+			String[] idsCopy;
+			if (rawOffsetIds != null) {
+				idsCopy = rawOffsetIds.clone();
+			} else {
+				idsCopy = new String[0];
+			}
+			return idsCopy;
+		}
+
+		/**
+		 * @param currentVersion
+		 *            the current version of the zones.
+		 * @param when
+		 *            the current time.
+		 * @return true if the index may still be used.
+		 */
+		boolean isCurrent(long currentVersion, long when) {
+			return version == currentVersion && when < validUntil;
+		}
+	}
+}
@@ -0,0 +1,697 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.classactionpl.tz;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The compiled form of a zone. A zone's details and their rules are resolved
+ * once into a sorted array of transition instants, each of which starts an
+ * interval of constant UTC offset. Offset lookups then become a binary search
+ * over primitive arrays instead of a resolution of rules.
+ * <p>
+ * Rules that continue forever are compiled up until the end of
+ * {@link #COMPILE_UNTIL_YEAR}. Instants at or beyond the horizon are not
+ * covered by the table and must be resolved from the rules.
+ *
+ * @author huntc
+ *
+ */
+public final class ZoneTransitions {
+
+	/**
+	 * The last year that rules continuing forever are compiled for.
+	 */
+	public static final int COMPILE_UNTIL_YEAR = 2100;
+
+	/** */
+	private static final int INITIAL_CAPACITY = 16;
+
+	/**
+	 * The number of intervals to step forward from a hint before resorting to
+	 * a binary search.
+	 */
+	private static final int HINT_STEPS = 4;
+
+	/**
+	 * Compile a zone into its transitions.
+	 *
+	 * @param zone
+	 *            the zone to compile.
+	 * @return the compiled transitions.
+	 */
+	static ZoneTransitions compile(Zone zone) {
+		Builder builder = new Builder();
+
+		long start = Long.MIN_VALUE;
+		long horizon = Long.MAX_VALUE;
+		for (ZoneDetail detail : zone.getDetails()) {
+			long end = detail.resolveUntil();
+			if (end <= start) {
+				continue;
+			}
+
+			List<Rule> rules = detail.getRules();
+			if (rules == null) {
+				builder.add(start, detail.getUtcOffset() + detail.getSave(),
+						detail.getSave(), detail, null);
+			} else if (rules.size() == 0) {
+				builder.add(start, detail.getUtcOffset(), 0, detail, null);
+			} else {
+				CompiledRule[] compiledRules = detail.getCompiledRules();
+				int firstYear;
+				if (start == Long.MIN_VALUE) {
+					firstYear = Integer.MAX_VALUE;
+					for (CompiledRule rule : compiledRules) {
+						firstYear = Math.min(firstYear, rule.getFromYear());
+					}
+				} else {
+					firstYear = CivilTime.yearOf(start);
+				}
+
+				int lastYear;
+				if (end == Long.MAX_VALUE) {
+					lastYear = Integer.MIN_VALUE;
+					for (CompiledRule rule : compiledRules) {
+						lastYear = Math.max(lastYear, rule.getToYear());
+					}
+					if (lastYear > COMPILE_UNTIL_YEAR) {
+						lastYear = COMPILE_UNTIL_YEAR;
+						horizon = CivilTime.yearStart(COMPILE_UNTIL_YEAR + 1);
+					} else {
+						++lastYear;
+					}
+				} else {
+					lastYear = Math.min(CivilTime.yearOf(end),
+							COMPILE_UNTIL_YEAR);
+				}
+
+				long limit = Math.min(end, horizon);
+				long[] candidates = collectCandidates(detail, start, limit,
+						firstYear, lastYear);
+
+				long probe;
+				if (start == Long.MIN_VALUE) {
+					probe = CivilTime.yearStart(firstYear);
+				} else {
+					probe = start;
+				}
+				addRuleTransition(builder, detail, start, probe);
+				for (long candidate : candidates) {
+					addRuleTransition(builder, detail, candidate, candidate);
+				}
+			}
+
+			start = end;
+		}
+
+		if (start != Long.MAX_VALUE) {
+			// Beyond the last until there is no detail and hence no offset.
+			builder.add(start, 0, 0, null, null);
+		}
+
+		return builder.build(horizon);
+	}
+
+	/**
+	 * Append the transition for a detail's rule resolved at a given time.
+	 *
+	 * @param builder
+	 *            the builder to append to.
+	 * @param detail
+	 *            the detail in force.
+	 * @param start
+	 *            the start of the interval.
+	 * @param probe
+	 *            the time to resolve the rule at.
+	 */
+	private static void addRuleTransition(Builder builder, ZoneDetail detail,
+			long start, long probe) {
+		Rule rule = detail.resolveRule(probe);
+		int save;
+		if (rule != null) {
+			save = rule.getSave();
+		} else {
+			save = 0;
+		}
+		builder.add(start, detail.getUtcOffset() + save, save, detail, rule);
+	}
+
+	/**
+	 * Collect the instants at which the rule resolved for a detail may change.
+	 * These are the instants that rules start in each year, and the start of
+	 * each year given that resolution considers the current and previous year.
+	 *
+	 * @param detail
+	 *            the detail with rules.
+	 * @param start
+	 *            instants must be after this.
+	 * @param limit
+	 *            instants must be before this.
+	 * @param firstYear
+	 *            the first year to consider.
+	 * @param lastYear
+	 *            the last year to consider.
+	 * @return the sorted candidate instants.
+	 */
+	private static long[] collectCandidates(ZoneDetail detail, long start,
+			long limit, int firstYear, int lastYear) {
+		long[] candidates = new long[INITIAL_CAPACITY];
+		int size = 0;
+
+		for (CompiledRule rule : detail.getCompiledRules()) {
+			int fromYear = Math.max(rule.getFromYear(), firstYear - 1);
+			int toYear = Math.min(rule.getToYear(), lastYear + 1);
+			for (int year = fromYear; year <= toYear; ++year) {
+				if (rule.yearIsType(year)) {
+					long candidate = rule.resolveStart(year, detail
+							.getUtcOffset());
+					if (candidate > start && candidate < limit) {
+						candidates = ensureCapacity(candidates, size);
+						candidates[size++] = candidate;
+					}
+				}
+			}
+		}
+
+		for (int year = firstYear; year <= lastYear + 1; ++year) {
+			long candidate = CivilTime.yearStart(year);
+			if (candidate > start && candidate < limit) {
+				candidates = ensureCapacity(candidates, size);
+				candidates[size++] = candidate;
+			}
+		}
+
+		Arrays.sort(candidates, 0, size);
+		return trim(candidates, size);
+	}
+
+	/**
+	 * Grow an array if it has no room for another element.
+	 *
+	 * @param values
+	 *            the array.
+	 * @param size
+	 *            the number of elements in use.
+	 * @return the array or a larger copy of it.
+	 */
+	private static long[] ensureCapacity(long[] values, int size) {
+		long[] grown;
+		if (size == values.length) {
+			grown = new long[size * 2];
+			System.arraycopy(values, 0, grown, 0, size);
+		} else {
+			grown = values;
+		}
+		return grown;
+	}
+
+	/**
+	 * Grow an array if it has no room for another element.
+	 *
+	 * @param values
+	 *            the array.
+	 * @param size
+	 *            the number of elements in use.
+	 * @return the array or a larger copy of it.
+	 */
+	private static int[] ensureCapacity(int[] values, int size) {
+		int[] grown;
+		if (size == values.length) {
+			grown = new int[size * 2];
+			System.arraycopy(values, 0, grown, 0, size);
+		} else {
+			grown = values;
+		}
+		return grown;
+	}
+
+	/**
+	 * @param values
+	 *            the array.
+	 * @param size
+	 *            the number of elements in use.
+	 * @return an array holding just the elements in use.
+	 */
+	private static long[] trim(long[] values, int size) {
+		long[] trimmed = new long[size];
+		System.arraycopy(values, 0, trimmed, 0, size);
+		return trimmed;
+	}
+
+	/**
+	 * @param values
+	 *            the array.
+	 * @param size
+	 *            the number of elements in use.
+	 * @return an array holding just the elements in use.
+	 */
+	private static int[] trim(int[] values, int size) {
+		int[] trimmed = new int[size];
+		System.arraycopy(values, 0, trimmed, 0, size);
+		return trimmed;
+	}
+
+	/**
+	 * Combine a value into a hash.
+	 *
+	 * @param hash
+	 *            the hash so far.
+	 * @param value
+	 *            the value.
+	 * @return the new hash.
+	 */
+	private static long hash(long hash, long value) {
+		// The finalisation step of MurmurHash3, which mixes every bit of its
+		// input into every bit of its output.
+		long mixed = hash ^ value;
+		mixed *= 0xff51afd7ed558ccdL;
+		mixed ^= mixed >>> 33;
+		mixed *= 0xc4ceb9fe1a85ec53L;
+		mixed ^= mixed >>> 33;
+		return mixed;
+	}
+
+	/**
+	 * The instants at which each interval starts. The first interval always
+	 * starts at Long.MIN_VALUE.
+	 */
+	private final long[] transitions;
+
+	/**
+	 * The total UTC offset in seconds of each interval.
+	 */
+	private final int[] utcOffsets;
+
+	/**
+	 * The DST save in seconds of each interval.
+	 */
+	private final int[] saves;
+
+	/**
+	 * The detail in force for each interval, or null if there is none.
+	 */
+	private final ZoneDetail[] details;
+
+	/**
+	 * The rule in force for each interval, or null if there is none.
+	 */
+	private final Rule[] rules;
+
+	/**
+	 * The abbreviation for standard time of each interval.
+	 */
+	private final String[] standardAbbreviations;
+
+	/**
+	 * The abbreviation for daylight time of each interval.
+	 */
+	private final String[] daylightAbbreviations;
+
+	/**
+	 * Instants at or after this are not covered by the table.
+	 */
+	private final long horizon;
+
+	/**
+	 * The fingerprint of the entire table.
+	 */
+	private final long fingerprint;
+
+	/**
+	 * The fingerprint last requested for a year onwards, or null if none.
+	 */
+	private volatile YearFingerprint yearFingerprint;
+
+	/**
+	 * Construct the compiled form.
+	 *
+	 * @param transitions
+	 *            value.
+	 * @param utcOffsets
+	 *            value.
+	 * @param saves
+	 *            value.
+	 * @param details
+	 *            value.
+	 * @param rules
+	 *            value.
+	 * @param horizon
+	 *            value.
+	 */
+	private ZoneTransitions(long[] transitions, int[] utcOffsets, int[] saves,
+			ZoneDetail[] details, Rule[] rules, long horizon) {
+		this.transitions = transitions;
+		this.utcOffsets = utcOffsets;
+		this.saves = saves;
+		this.details = details;
+		this.rules = rules;
+		this.horizon = horizon;
+
+		int size = transitions.length;
+		standardAbbreviations = new String[size];
+		daylightAbbreviations = new String[size];
+		for (int i = 0; i < size; ++i) {
+			if (details[i] != null) {
+				standardAbbreviations[i] = details[i].resolveAbbreviation(
+						rules[i], false);
+				daylightAbbreviations[i] = details[i].resolveAbbreviation(
+						rules[i], true);
+			}
+		}
+
+		fingerprint = getFingerprint(Long.MIN_VALUE, Long.MAX_VALUE);
+	}
+
+	/**
+	 * Determine whether a time can be resolved using the table.
+	 *
+	 * @param when
+	 *            the time in milliseconds since the epoch.
+	 * @return true if it can.
+	 */
+	public boolean covers(long when) {
+		return when < horizon;
+	}
+
+	/**
+	 * @param index
+	 *            the interval.
+	 * @return the abbreviation in use during the interval or null if none.
+	 */
+	public String getAbbreviation(int index) {
+		return getAbbreviation(index, saves[index] != 0);
+	}
+
+	/**
+	 * @param index
+	 *            the interval.
+	 * @param daylight
+	 *            whether the daylight time abbreviation is required.
+	 * @return the abbreviation for either standard or daylight time, as given
+	 *         during the interval, or null if none.
+	 */
+	public String getAbbreviation(int index, boolean daylight) {
+		String abbreviation;
+		if (daylight) {
+			abbreviation = daylightAbbreviations[index];
+		} else {
+			abbreviation = standardAbbreviations[index];
+		}
+		return abbreviation;
+	}
+
+	/**
+	 * @param index
+	 *            the interval.
+	 * @return the detail in force during the interval or null if none.
+	 */
+	public ZoneDetail getDetail(int index) {
+		return details[index];
+	}
+
+	/**
+	 * A fingerprint is a hash of the UTC offsets and DST saves that apply
+	 * over time. Tables with equal fingerprints can be taken as applying the
+	 * same offsets at the same times, irrespective of the details and rules
+	 * that they were compiled from. Fingerprints are stable between runs.
+	 *
+	 * @return the fingerprint of the entire table.
+	 */
+	public long getFingerprint() {
+		return fingerprint;
+	}
+
+	/**
+	 * Return the fingerprint of the table from the start of a given year
+	 * onwards. The fingerprint for the year last requested is remembered.
+	 *
+	 * @param fromYear
+	 *            the year.
+	 * @return the fingerprint.
+	 * @see #getFingerprint()
+	 */
+	public long getFingerprint(int fromYear) {
+		YearFingerprint resolvedYearFingerprint = yearFingerprint;
+		if (resolvedYearFingerprint == null
+				|| resolvedYearFingerprint.year != fromYear) {
+			resolvedYearFingerprint = new YearFingerprint(fromYear,
+					getFingerprint(CivilTime.yearStart(fromYear),
+							Long.MAX_VALUE));
+			yearFingerprint = resolvedYearFingerprint;
+		}
+		return resolvedYearFingerprint.fingerprint;
+	}
+
+	/**
+	 * Return the fingerprint of the table within a window of time.
+	 *
+	 * @param from
+	 *            the inclusive start of the window in milliseconds since the
+	 *            epoch.
+	 * @param to
+	 *            the exclusive end of the window in milliseconds since the
+	 *            epoch.
+	 * @return the fingerprint.
+	 * @see #getFingerprint()
+	 */
+	public long getFingerprint(long from, long to) {
+		long hash = 0;
+		int lastUtcOffset = 0;
+		int lastSave = 0;
+		boolean hashed = false;
+		for (int i = indexOf(from); i < transitions.length
+				&& transitions[i] < to; ++i) {
+			// Intervals changing neither offset nor save are not
+			// distinguished.
+			if (!hashed || utcOffsets[i] != lastUtcOffset
+					|| saves[i] != lastSave) {
+				hash = hash(hash, Math.max(transitions[i], from));
+				hash = hash(hash, utcOffsets[i]);
+				hash = hash(hash, saves[i]);
+				lastUtcOffset = utcOffsets[i];
+				lastSave = saves[i];
+				hashed = true;
+			}
+		}
+		return hash(hash, Math.min(horizon, to));
+	}
+
+	/**
+	 * @return the instant from which the table no longer applies, or
+	 *         Long.MAX_VALUE if it always applies.
+	 */
+	public long getHorizon() {
+		return horizon;
+	}
+
+	/**
+	 * @param index
+	 *            the interval.
+	 * @return the rule in force during the interval or null if none.
+	 */
+	public Rule getRule(int index) {
+		return rules[index];
+	}
+
+	/**
+	 * @param index
+	 *            the interval.
+	 * @return the DST save in seconds.
+	 */
+	public int getSave(int index) {
+		return saves[index];
+	}
+
+	/**
+	 * @param index
+	 *            the interval.
+	 * @return the instant the interval starts at.
+	 */
+	public long getTransition(int index) {
+		return transitions[index];
+	}
+
+	/**
+	 * @param index
+	 *            the interval.
+	 * @return the total UTC offset in seconds.
+	 */
+	public int getUtcOffset(int index) {
+		return utcOffsets[index];
+	}
+
+	/**
+	 * Find the interval that a time falls within.
+	 *
+	 * @param when
+	 *            the time in milliseconds since the epoch.
+	 * @return the index of the interval.
+	 */
+	public int indexOf(long when) {
+		int low = 0;
+		int high = transitions.length - 1;
+		while (low < high) {
+			int mid = (low + high + 1) >>> 1;
+			if (transitions[mid] <= when) {
+				low = mid;
+			} else {
+				high = mid - 1;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * Find the interval that a time falls within given the interval that a
+	 * nearby earlier time fell within. Stepping forward from the hint makes
+	 * walking a sorted sequence of times cheap; times before the hint, or
+	 * well after it, are binary searched.
+	 *
+	 * @param when
+	 *            the time in milliseconds since the epoch.
+	 * @param hint
+	 *            the index of an interval.
+	 * @return the index of the interval.
+	 */
+	public int indexOf(long when, int hint) {
+		int index;
+		if (hint >= 0 && hint < transitions.length
+				&& transitions[hint] <= when) {
+			index = hint;
+			int lastIndex = transitions.length - 1;
+			int stepLimit = Math.min(hint + HINT_STEPS, lastIndex);
+			while (index < stepLimit && transitions[index + 1] <= when) {
+				++index;
+			}
+			if (index < lastIndex && transitions[index + 1] <= when) {
+				index = indexOf(when);
+			}
+		} else {
+			index = indexOf(when);
+		}
+		return index;
+	}
+
+	/**
+	 * @return the number of intervals.
+	 */
+	public int size() {
+		return transitions.length;
+	}
+
+	@Override
+	public String toString() {
+		return "ZoneTransitions [size=" + transitions.length + ", horizon="
+				+ horizon + "]";
+	}
+
+	/**
+	 * Accumulates intervals, coalescing those that do not change anything.
+	 */
+	private static final class Builder {
+		/** */
+		private long[] transitions = new long[INITIAL_CAPACITY];
+		/** */
+		private int[] utcOffsets = new int[INITIAL_CAPACITY];
+		/** */
+		private int[] saves = new int[INITIAL_CAPACITY];
+		/** */
+		private final List<ZoneDetail> details = new ArrayList<ZoneDetail>();
+		/** */
+		private final List<Rule> rules = new ArrayList<Rule>();
+		/** */
+		private int size;
+
+		/**
+		 * Append an interval.
+		 *
+		 * @param start
+		 *            when the interval starts.
+		 * @param utcOffset
+		 *            the total UTC offset.
+		 * @param save
+		 *            the DST save.
+		 * @param detail
+		 *            the detail in force.
+		 * @param rule
+		 *            the rule in force.
+		 */
+		void add(long start, int utcOffset, int save, ZoneDetail detail,
+				Rule rule) {
+			if (size > 0) {
+				int last = size - 1;
+				if (utcOffsets[last] == utcOffset && saves[last] == save
+						&& details.get(last) == detail
+						&& rules.get(last) == rule) {
+					return;
+				}
+			}
+			transitions = ensureCapacity(transitions, size);
+			utcOffsets = ensureCapacity(utcOffsets, size);
+			saves = ensureCapacity(saves, size);
+			transitions[size] = start;
+			utcOffsets[size] = utcOffset;
+			saves[size] = save;
+			details.add(detail);
+			rules.add(rule);
+			++size;
+		}
+
+		/**
+		 * @param horizon
+		 *            instants from which the table does not apply.
+		 * @return the compiled table.
+		 */
+		ZoneTransitions build(long horizon) {
+			if (size == 0) {
+				add(Long.MIN_VALUE, 0, 0, null, null);
+			}
+			transitions[0] = Long.MIN_VALUE;
+			return new ZoneTransitions(trim(transitions, size), trim(
+					utcOffsets, size), trim(saves, size), details
+					.toArray(new ZoneDetail[size]), rules
+					.toArray(new Rule[size]), horizon);
+		}
+	}
+
+	/**
+	 * A fingerprint from a year onwards.
+	 */
+	private static final class YearFingerprint {
+		/** */
+		private final int year;
+		/** */
+		private final long fingerprint;
+
+		/**
+		 * @param year
+		 *            value.
+		 * @param fingerprint
+		 *            value.
+		 */
+		YearFingerprint(int year, long fingerprint) {
+			this.year = year;
+			this.fingerprint = fingerprint;
+		}
+	}
+}
@@ -0,0 +1,657 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.classactionpl.tz;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileFilter;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.log4j.Logger;
+
+import com.classactionpl.tz.ZoneinfoDocument.LinkDeclaration;
+import com.classactionpl.tz.ZoneinfoDocument.RuleReference;
+
+/**
+ * Loads the zoneinfo files of a directory and reloads those that change,
+ * publishing the zones to a registry. Only files that have been added,
+ * changed or removed since the previous load are parsed. Zones from the other
+ * files are published as they were, along with their compiled transitions,
+ * and links are re-targeted at any zones that have been replaced. The zones
+ * of changed files are compiled before they are published so that lookups do
+ * not pay for compilation.
+ * <p>
+ * A file is taken to have changed when its modification time or length
+ * changes. The directory may be polled in the background or reloaded on
+ * demand.
+ * <p>
+ * The loader shares its registry: zones of the registry that did not come
+ * from the directory are kept, and links among them follow the zones of the
+ * directory that replace what they link to. Zones published from the
+ * directory replace those of the same id.
+ *
+ * @author huntc
+ *
+ */
+public class ZoneinfoDirectoryLoader {
+
+	/**
+	 * Accepts the files of a directory that have no extension and are not
+	 * hidden, as is the case for zoneinfo's region files.
+	 */
+	public static final FileFilter REGION_FILES = new FileFilter() {
+		public boolean accept(File file) {
+			String name = file.getName();
+			return file.isFile() && !file.isHidden()
+					&& name.indexOf('.') < 0;
+		}
+	};
+
+	/** */
+	private static Logger logger = Logger
+			.getLogger(ZoneinfoDirectoryLoader.class);
+
+	/** */
+	private static final int BUFFER_SIZE = 8192;
+
+	/**
+	 * The directory to load from.
+	 */
+	private final File directory;
+
+	/**
+	 * Selects the files of the directory to load.
+	 */
+	private final FileFilter fileFilter;
+
+	/**
+	 * The registry to publish to.
+	 */
+	private final ZoneRegistry registry;
+
+	/**
+	 * The parser.
+	 */
+	private final ZoneFactory factory = new ZoneFactory();
+
+	/**
+	 * The state of each file loaded, keyed by file name in name order.
+	 */
+	private final Map<String, LoadedFile> loadedFiles = new TreeMap<String, LoadedFile>();
+
+	/**
+	 * The zones last published.
+	 */
+	private Map<String, AbstractZone> publishedZones = Collections
+			.emptyMap();
+
+	/**
+	 * Polls the directory, or null if not polling.
+	 */
+	private ScheduledExecutorService poller;
+
+	/**
+	 * Load the region files of a directory into the default registry,
+	 * keeping its other zones.
+	 *
+	 * @param directory
+	 *            the directory.
+	 */
+	public ZoneinfoDirectoryLoader(File directory) {
+		this(directory, REGION_FILES);
+	}
+
+	/**
+	 * Load the selected files of a directory into the default registry,
+	 * keeping its other zones.
+	 *
+	 * @param directory
+	 *            the directory.
+	 * @param fileFilter
+	 *            selects the files to load.
+	 */
+	public ZoneinfoDirectoryLoader(File directory, FileFilter fileFilter) {
+		this(directory, fileFilter, ZoneRegistry.getDefault());
+	}
+
+	/**
+	 * Load the selected files of a directory into a registry, keeping its
+	 * other zones.
+	 *
+	 * @param directory
+	 *            the directory.
+	 * @param fileFilter
+	 *            selects the files to load.
+	 * @param registry
+	 *            the registry to publish to.
+	 */
+	public ZoneinfoDirectoryLoader(File directory, FileFilter fileFilter,
+			ZoneRegistry registry) {
+		this.directory = directory;
+		this.fileFilter = fileFilter;
+		this.registry = registry;
+	}
+
+	/**
+	 * Read a file fully.
+	 *
+	 * @param file
+	 *            the file.
+	 * @return its content.
+	 * @throws IOException
+	 *             if it cannot be read.
+	 */
+	private static byte[] read(File file) throws IOException {
+		InputStream in = new FileInputStream(file);
+		try {
+			ByteArrayOutputStream out = new ByteArrayOutputStream(
+					(int) file.length());
+			byte[] buffer = new byte[BUFFER_SIZE];
+			int read;
+			while ((read = in.read(buffer)) >= 0) {
+				out.write(buffer, 0, read);
+			}
+			return out.toByteArray();
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Parse a file without resolving the references that it makes.
+	 *
+	 * @param name
+	 *            the file name.
+	 * @param data
+	 *            the content of the file.
+	 * @return the rules, zones and links that the file declares, none if it
+	 *         cannot be parsed.
+	 */
+	private ZoneinfoDocument collect(String name, byte[] data) {
+		ZoneinfoDocument document;
+		try {
+			document = factory.collect(new ByteArrayInputStream(data));
+		} catch (Exception e) {
+			logger.error("Unable to parse " + name, e);
+			document = new ZoneinfoDocument();
+		}
+		return document;
+	}
+
+	/**
+	 * Link the changed files with the zones and rules of the other files
+	 * available for them to refer to. References between the changed files
+	 * are resolved whichever of them declares what is referred to. Where
+	 * several files declare rules of the same name, the first file by name
+	 * provides them.
+	 *
+	 * @param documents
+	 *            the changed files keyed by file name.
+	 * @return the zones and links that each changed file declares, keyed by
+	 *         file name.
+	 */
+	private Map<String, Map<String, AbstractZone>> link(
+			Map<String, ZoneinfoDocument> documents) {
+		// Zones of other files are presented as links to them so that they
+		// may be linked to, but not added to.
+		Map<String, AbstractZone> zones = new HashMap<String, AbstractZone>();
+		Map<AbstractZone, Boolean> seeded = new IdentityHashMap<AbstractZone, Boolean>();
+		for (Map.Entry<String, LoadedFile> entry : loadedFiles.entrySet()) {
+			if (!documents.containsKey(entry.getKey())) {
+				for (AbstractZone zone : entry.getValue().zones.values()) {
+					AbstractZone seed;
+					if (zone instanceof Zone) {
+						Link link = new Link();
+						link.setName(zone.getName());
+						link.setTargetZone(zone);
+						seed = link;
+					} else {
+						seed = zone;
+					}
+					zones.put(zone.getName(), seed);
+					seeded.put(seed, Boolean.TRUE);
+				}
+			}
+		}
+
+		ZoneinfoLinker linker = new ZoneinfoLinker(zones);
+		Set<String> fileNames = new TreeSet<String>(loadedFiles.keySet());
+		fileNames.addAll(documents.keySet());
+		for (String name : fileNames) {
+			ZoneinfoDocument document = documents.get(name);
+			if (document != null) {
+				linker.add(document);
+			} else {
+				linker.addRules(loadedFiles.get(name).ruleLists);
+			}
+		}
+		ZoneinfoLinker.Report report = linker.link();
+		if (!report.isResolved()) {
+			logger.warn("Unresolved zoneinfo references in " + directory
+					+ ": " + report);
+		}
+
+		Map<String, Map<String, AbstractZone>> declaredZones = new HashMap<String, Map<String, AbstractZone>>();
+		for (Map.Entry<String, ZoneinfoDocument> entry : documents.entrySet()) {
+			ZoneinfoDocument document = entry.getValue();
+			List<String> names = new ArrayList<String>(document.getZones()
+					.keySet());
+			for (LinkDeclaration linkDeclaration : document.getLinks()) {
+				names.add(linkDeclaration.getName());
+			}
+
+			Map<String, AbstractZone> fileZones = new HashMap<String, AbstractZone>();
+			for (String zoneName : names) {
+				AbstractZone zone = zones.get(zoneName);
+				if (zone != null && !seeded.containsKey(zone)) {
+					fileZones.put(zoneName, zone);
+				}
+			}
+			declaredZones.put(entry.getKey(), fileZones);
+		}
+		return declaredZones;
+	}
+
+	/**
+	 * Load the files that have changed since the previous load and publish
+	 * the resulting zones, if any have changed.
+	 *
+	 * @return a report of what was loaded.
+	 */
+	public synchronized ReloadReport reload() {
+		ReloadReport report = new ReloadReport();
+		long start = System.nanoTime();
+
+		// Determine what has changed.
+		File[] files = directory.listFiles(fileFilter);
+		if (files == null) {
+			files = new File[0];
+		}
+		Map<String, File> currentFiles = new TreeMap<String, File>();
+		for (File file : files) {
+			currentFiles.put(file.getName(), file);
+		}
+
+		List<String> removedNames = new ArrayList<String>();
+		for (String name : loadedFiles.keySet()) {
+			if (!currentFiles.containsKey(name)) {
+				removedNames.add(name);
+			}
+		}
+		// Files that use the rules of removed or changed files are parsed
+		// again so that their zones use the rules now declared.
+		Set<String> changedRuleNames = new HashSet<String>();
+		for (String name : removedNames) {
+			changedRuleNames.addAll(loadedFiles.remove(name).ruleLists
+					.keySet());
+		}
+		report.filesRemoved = removedNames;
+
+		Map<String, byte[]> changedData = new LinkedHashMap<String, byte[]>();
+		Map<String, long[]> changedStamps = new HashMap<String, long[]>();
+		for (File file : currentFiles.values()) {
+			LoadedFile loadedFile = loadedFiles.get(file.getName());
+			long lastModified = file.lastModified();
+			long length = file.length();
+			if (loadedFile == null || loadedFile.lastModified != lastModified
+					|| loadedFile.length != length) {
+				try {
+					changedData.put(file.getName(), read(file));
+					changedStamps.put(file.getName(), new long[] {
+							lastModified, length });
+				} catch (IOException e) {
+					logger.error("Unable to read " + file, e);
+				}
+			}
+		}
+		report.scanNanos = System.nanoTime() - start;
+
+		if (!changedData.isEmpty() || !removedNames.isEmpty()) {
+			// Parse the changed files, and then resolve their references
+			// together so that the order in which they are parsed does not
+			// matter.
+			start = System.nanoTime();
+			Map<String, ZoneinfoDocument> documents = new TreeMap<String, ZoneinfoDocument>();
+			for (Map.Entry<String, byte[]> entry : changedData.entrySet()) {
+				String name = entry.getKey();
+				ZoneinfoDocument document = collect(name, entry.getValue());
+				documents.put(name, document);
+				changedRuleNames.addAll(document.getRuleLists().keySet());
+				LoadedFile loadedFile = loadedFiles.get(name);
+				if (loadedFile != null) {
+					changedRuleNames.addAll(loadedFile.ruleLists.keySet());
+				}
+			}
+			for (Map.Entry<String, LoadedFile> entry : loadedFiles.entrySet()) {
+				String name = entry.getKey();
+				LoadedFile loadedFile = entry.getValue();
+				if (!documents.containsKey(name)
+						&& !Collections.disjoint(loadedFile.ruleReferences,
+								changedRuleNames)) {
+					File file = currentFiles.get(name);
+					try {
+						documents.put(name, collect(name, read(file)));
+						changedStamps.put(name, new long[] {
+								loadedFile.lastModified, loadedFile.length });
+					} catch (IOException e) {
+						logger.error("Unable to read " + file, e);
+					}
+				}
+			}
+
+			for (Map.Entry<String, Map<String, AbstractZone>> entry : link(
+					documents).entrySet()) {
+				String name = entry.getKey();
+				ZoneinfoDocument document = documents.get(name);
+				Set<String> ruleReferences = new HashSet<String>();
+				for (RuleReference ruleReference : document
+						.getRuleReferences()) {
+					ruleReferences.add(ruleReference.getRuleName());
+				}
+				long[] stamps = changedStamps.get(name);
+				loadedFiles.put(name, new LoadedFile(stamps[0], stamps[1],
+						entry.getValue(), document.getRuleLists(),
+						ruleReferences));
+			}
+			report.filesParsed = new ArrayList<String>(documents.keySet());
+			report.parseNanos = System.nanoTime() - start;
+
+			// Combine the zones of all files and compile those that are new.
+			start = System.nanoTime();
+			Map<String, AbstractZone> loadedZones = new HashMap<String, AbstractZone>();
+			for (LoadedFile loadedFile : loadedFiles.values()) {
+				loadedZones.putAll(loadedFile.zones);
+			}
+			for (AbstractZone zone : loadedZones.values()) {
+				if (zone instanceof Zone
+						&& publishedZones.get(zone.getName()) != zone) {
+					zone.getTransitions();
+					++report.zonesCompiled;
+				}
+			}
+
+			// Keep the zones of the registry that did not come from the
+			// directory, in place of those that were last published from it.
+			Map<String, AbstractZone> zones = new HashMap<String, AbstractZone>(
+					registry.getZones());
+			for (Map.Entry<String, AbstractZone> entry : publishedZones
+					.entrySet()) {
+				if (zones.get(entry.getKey()) == entry.getValue()) {
+					zones.remove(entry.getKey());
+				}
+			}
+			zones.putAll(loadedZones);
+			retargetLinks(zones, loadedZones, report);
+			report.compileNanos = System.nanoTime() - start;
+
+			start = System.nanoTime();
+			registry.setZones(zones);
+			publishedZones = loadedZones;
+			report.publishNanos = System.nanoTime() - start;
+
+			logger.info("Reloaded " + directory + ": " + report);
+		}
+
+		return report;
+	}
+
+	/**
+	 * Point links at the zones that have replaced the ones they link to, and
+	 * leave out links to zones that no longer exist. The links of the files
+	 * are updated to match.
+	 *
+	 * @param zones
+	 *            the zones to publish.
+	 * @param loadedZones
+	 *            the zones of all files.
+	 * @param report
+	 *            receives the number of links re-targeted.
+	 */
+	private void retargetLinks(Map<String, AbstractZone> zones,
+			Map<String, AbstractZone> loadedZones, ReloadReport report) {
+		Map<AbstractZone, AbstractZone> replacements = ZoneinfoLinker
+				.retargetLinks(zones);
+		report.linksRetargeted = replacements.size();
+
+		for (LoadedFile loadedFile : loadedFiles.values()) {
+			for (Map.Entry<String, AbstractZone> entry : loadedFile.zones
+					.entrySet()) {
+				AbstractZone replacement = replacements.get(entry.getValue());
+				if (replacement != null) {
+					entry.setValue(replacement);
+				}
+			}
+		}
+		Iterator<Map.Entry<String, AbstractZone>> loadedZoneIterator = loadedZones
+				.entrySet().iterator();
+		while (loadedZoneIterator.hasNext()) {
+			Map.Entry<String, AbstractZone> entry = loadedZoneIterator.next();
+			AbstractZone zone = zones.get(entry.getKey());
+			if (zone == null) {
+				loadedZoneIterator.remove();
+			} else if (zone == replacements.get(entry.getValue())) {
+				entry.setValue(zone);
+			}
+		}
+	}
+
+	/**
+	 * Start reloading the directory periodically in the background. The
+	 * directory is first loaded before returning.
+	 *
+	 * @param period
+	 *            the time between reloads.
+	 * @param unit
+	 *            the unit of the period.
+	 */
+	public synchronized void start(long period, TimeUnit unit) {
+		if (poller == null) {
+			reload();
+			poller = Executors
+					.newSingleThreadScheduledExecutor(new ThreadFactory() {
+						public Thread newThread(Runnable runnable) {
+							Thread thread = new Thread(runnable,
+									"zoneinfo-reload " + directory);
+							thread.setDaemon(true);
+							return thread;
+						}
+					});
+			poller.scheduleWithFixedDelay(new Runnable() {
+				public void run() {
+					try {
+						reload();
+					} catch (RuntimeException e) {
+						logger.error("During zoneinfo reload:", e);
+					}
+				}
+			}, period, period, unit);
+		}
+	}
+
+	/**
+	 * Stop reloading the directory in the background.
+	 */
+	public synchronized void stop() {
+		if (poller != null) {
+			poller.shutdownNow();
+			poller = null;
+		}
+	}
+
+	/**
+	 * What was loaded from a file.
+	 */
+	private static final class LoadedFile {
+		/** */
+		private final long lastModified;
+		/** */
+		private final long length;
+		/**
+		 * The zones and links declared by the file, keyed by id.
+		 */
+		private final Map<String, AbstractZone> zones;
+		/**
+		 * The rules declared by the file, keyed by name.
+		 */
+		private final Map<String, List<Rule>> ruleLists;
+		/**
+		 * The names of the rules that the file uses but does not declare.
+		 */
+		private final Set<String> ruleReferences;
+
+		/**
+		 * @param lastModified
+		 *            value.
+		 * @param length
+		 *            value.
+		 * @param zones
+		 *            value.
+		 * @param ruleLists
+		 *            value.
+		 * @param ruleReferences
+		 *            value.
+		 */
+		LoadedFile(long lastModified, long length,
+				Map<String, AbstractZone> zones,
+				Map<String, List<Rule>> ruleLists, Set<String> ruleReferences) {
+			this.lastModified = lastModified;
+			this.length = length;
+			this.zones = zones;
+			this.ruleLists = ruleLists;
+			this.ruleReferences = ruleReferences;
+		}
+	}
+
+	/**
+	 * What a reload did and how long each of its stages took.
+	 */
+	public static final class ReloadReport {
+		/** */
+		private List<String> filesParsed = Collections.emptyList();
+		/** */
+		private List<String> filesRemoved = Collections.emptyList();
+		/** */
+		private int zonesCompiled;
+		/** */
+		private int linksRetargeted;
+		/** */
+		private long scanNanos;
+		/** */
+		private long parseNanos;
+		/** */
+		private long compileNanos;
+		/** */
+		private long publishNanos;
+
+		/**
+		 * @return the time spent compiling new zones and re-targeting links,
+		 *         in nanoseconds.
+		 */
+		public long getCompileNanos() {
+			return compileNanos;
+		}
+
+		/**
+		 * @return the names of the files parsed.
+		 */
+		public List<String> getFilesParsed() {
+			return filesParsed;
+		}
+
+		/**
+		 * @return the names of the files no longer present.
+		 */
+		public List<String> getFilesRemoved() {
+			return filesRemoved;
+		}
+
+		/**
+		 * @return the number of links pointed at replaced zones.
+		 */
+		public int getLinksRetargeted() {
+			return linksRetargeted;
+		}
+
+		/**
+		 * @return the time spent parsing files, in nanoseconds.
+		 */
+		public long getParseNanos() {
+			return parseNanos;
+		}
+
+		/**
+		 * @return the time spent publishing the zones, in nanoseconds.
+		 */
+		public long getPublishNanos() {
+			return publishNanos;
+		}
+
+		/**
+		 * @return the time spent finding the files that changed, in
+		 *         nanoseconds.
+		 */
+		public long getScanNanos() {
+			return scanNanos;
+		}
+
+		/**
+		 * @return the number of zones compiled, being those that are new.
+		 */
+		public int getZonesCompiled() {
+			return zonesCompiled;
+		}
+
+		/**
+		 * @return whether anything was reloaded.
+		 */
+		public boolean isChanged() {
+			return !filesParsed.isEmpty() || !filesRemoved.isEmpty();
+		}
+
+		@Override
+		public String toString() {
+			return "ReloadReport [filesParsed=" + filesParsed
+					+ ", filesRemoved=" + filesRemoved + ", zonesCompiled="
+					+ zonesCompiled + ", linksRetargeted=" + linksRetargeted
+					+ ", scanNanos=" + scanNanos + ", parseNanos="
+					+ parseNanos + ", compileNanos=" + compileNanos
+					+ ", publishNanos=" + publishNanos + "]";
+		}
+	}
+}
@@ -0,0 +1,170 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.classactionpl.tz;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The rules, zones and links declared by a single zoneinfo document. Zones
+ * refer to the rules of the document where it declares them; references to
+ * rules that it does not declare, and all links, are left for a
+ * ZoneinfoLinker to resolve once the documents of interest have been parsed.
+ * Documents may therefore be parsed independently of each other and in any
+ * order.
+ * 
+ * @author huntc
+ * 
+ */
+final class ZoneinfoDocument {
+
+	/**
+	 * The zones declared, keyed by name in the order declared.
+	 */
+	private final Map<String, Zone> zones = new LinkedHashMap<String, Zone>();
+
+	/**
+	 * The rules declared, keyed by name.
+	 */
+	private final Map<String, List<Rule>> ruleLists = new HashMap<String, List<Rule>>();
+
+	/**
+	 * References to rules that the document does not declare.
+	 */
+	private final List<RuleReference> ruleReferences = new ArrayList<RuleReference>();
+
+	/**
+	 * The links declared, in the order declared.
+	 */
+	private final List<LinkDeclaration> links = new ArrayList<LinkDeclaration>();
+
+	/**
+	 * @return the zones declared, keyed by name in the order declared.
+	 */
+	Map<String, Zone> getZones() {
+		return zones;
+	}
+
+	/**
+	 * @return the rules declared, keyed by name.
+	 */
+	Map<String, List<Rule>> getRuleLists() {
+		return ruleLists;
+	}
+
+	/**
+	 * @return references to rules that the document does not declare.
+	 */
+	List<RuleReference> getRuleReferences() {
+		return ruleReferences;
+	}
+
+	/**
+	 * @return the links declared, in the order declared.
+	 */
+	List<LinkDeclaration> getLinks() {
+		return links;
+	}
+
+	/**
+	 * A zone detail's reference to rules by name.
+	 */
+	static final class RuleReference {
+		/**
+		 * The detail referring to the rules.
+		 */
+		private final ZoneDetail detail;
+		/**
+		 * The name of the rules.
+		 */
+		private final String ruleName;
+
+		/**
+		 * Construct the reference.
+		 * 
+		 * @param detail
+		 *            value.
+		 * @param ruleName
+		 *            value.
+		 */
+		RuleReference(ZoneDetail detail, String ruleName) {
+			this.detail = detail;
+			this.ruleName = ruleName;
+		}
+
+		/**
+		 * @return the detail referring to the rules.
+		 */
+		ZoneDetail getDetail() {
+			return detail;
+		}
+
+		/**
+		 * @return the name of the rules.
+		 */
+		String getRuleName() {
+			return ruleName;
+		}
+	}
+
+	/**
+	 * A link's declaration, naming the zone that it links to.
+	 */
+	static final class LinkDeclaration {
+		/**
+		 * The name of the zone linked to.
+		 */
+		private final String targetName;
+		/**
+		 * The name of the link.
+		 */
+		private final String name;
+
+		/**
+		 * Construct the declaration.
+		 * 
+		 * @param targetName
+		 *            value.
+		 * @param name
+		 *            value.
+		 */
+		LinkDeclaration(String targetName, String name) {
+			this.targetName = targetName;
+			this.name = name;
+		}
+
+		/**
+		 * @return the name of the zone linked to.
+		 */
+		String getTargetName() {
+			return targetName;
+		}
+
+		/**
+		 * @return the name of the link.
+		 */
+		String getName() {
+			return name;
+		}
+	}
+}
@@ -0,0 +1,855 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.classactionpl.tz;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.log4j.Logger;
+
+import com.classactionpl.tz.Rule.OnType;
+import com.classactionpl.tz.Rule.TimeOfDayType;
+import com.classactionpl.tz.Rule.YearType;
+import com.classactionpl.tz.Rule.YearValueType;
+import com.classactionpl.tz.ZoneinfoDocument.LinkDeclaration;
+import com.classactionpl.tz.ZoneinfoDocument.RuleReference;
+
+/**
+ * Parses zoneinfo documents a line at a time, building rules, zones and links
+ * directly as each line is read. Once linked, the zones produced are the same
+ * as those of the grammar used by ZoneFactory.parse, without the intermediate
+ * tokens and trees that it produces and walks.
+ * <p>
+ * Zones may refer to rules that are declared later in a document; these
+ * references are resolved once the document has been read. References to
+ * rules that the document does not declare, and links, are left to a
+ * ZoneinfoLinker. Lines that cannot be parsed are logged and skipped.
+ * Instances are not thread safe and parse one document.
+ * 
+ * @author huntc
+ * 
+ */
+final class ZoneinfoLineParser {
+
+	/** */
+	private static Logger logger = Logger.getLogger(ZoneinfoLineParser.class);
+
+	/** */
+	private static final int SECONDS_PER_MINUTE = 60;
+
+	/** */
+	private static final int SECONDS_PER_HOUR = 60 * SECONDS_PER_MINUTE;
+
+	/**
+	 * The number of fields of a rule line.
+	 */
+	private static final int RULE_FIELDS = 10;
+
+	/**
+	 * The number of fields of a link line.
+	 */
+	private static final int LINK_FIELDS = 3;
+
+	/**
+	 * The number of fields of a zone detail, excluding those of its until.
+	 */
+	private static final int DETAIL_FIELDS = 3;
+
+	/**
+	 * The most fields of a zone detail's until.
+	 */
+	private static final int UNTIL_FIELDS = 4;
+
+	/**
+	 * The months, indexed by their Calendar value.
+	 */
+	private static final String[] MONTHS = { "January", "February", "March",
+			"April", "May", "June", "July", "August", "September", "October",
+			"November", "December" };
+
+	/**
+	 * The days of the week, indexed by their Calendar value less one.
+	 */
+	private static final String[] DAYS_OF_WEEK = { "Sunday", "Monday",
+			"Tuesday", "Wednesday", "Thursday", "Friday", "Saturday" };
+
+	/**
+	 * The length of an abbreviated month or day of the week.
+	 */
+	private static final int ABBREVIATION_LENGTH = 3;
+
+	/**
+	 * The document being parsed.
+	 */
+	private final ZoneinfoDocument document = new ZoneinfoDocument();
+
+	/**
+	 * References to rules that were not yet declared.
+	 */
+	private final List<RuleReference> forwardRuleReferences = new ArrayList<RuleReference>();
+
+	/**
+	 * The fields of the current line.
+	 */
+	private String[] fields = new String[RULE_FIELDS];
+
+	/**
+	 * The zone that the next line continues, or null if none.
+	 */
+	private Zone continuedZone;
+
+	/**
+	 * The number of the current line.
+	 */
+	private int lineNumber;
+
+	/**
+	 * Parse a document and resolve the references that it makes to its own
+	 * rules.
+	 * 
+	 * @param reader
+	 *            the document.
+	 * @return the rules, zones and links of the document.
+	 * @throws IOException
+	 *             if the document cannot be read.
+	 */
+	ZoneinfoDocument parse(Reader reader) throws IOException {
+		BufferedReader lineReader = new BufferedReader(reader);
+		String line;
+		while ((line = lineReader.readLine()) != null) {
+			++lineNumber;
+			try {
+				parseLine(line);
+			} catch (ParseException e) {
+				logger.error("Line " + lineNumber + ", field "
+						+ (e.getErrorOffset() + 1) + ": " + e.getMessage());
+				continuedZone = null;
+			}
+		}
+		if (continuedZone != null) {
+			logger.error("Line " + lineNumber + ": Zone " + continuedZone.getName()
+					+ " is not continued.");
+			continuedZone = null;
+		}
+		resolveForwardRuleReferences();
+		return document;
+	}
+
+	/**
+	 * Split a line into its fields, ignoring any comment.
+	 * 
+	 * @param line
+	 *            the line.
+	 * @return the number of fields.
+	 */
+	private int splitFields(String line) {
+		int count = 0;
+		int length = line.length();
+		int i = 0;
+		while (i < length) {
+			char c = line.charAt(i);
+			if (c == '#') {
+				break;
+			} else if (c == ' ' || c == '\t') {
+				++i;
+			} else {
+				int start = i;
+				do {
+					++i;
+				} while (i < length && (c = line.charAt(i)) != ' ' && c != '\t'
+						&& c != '#');
+				if (count == fields.length) {
+					String[] moreFields = new String[count * 2];
+					System.arraycopy(fields, 0, moreFields, 0, count);
+					fields = moreFields;
+				}
+				fields[count++] = line.substring(start, i);
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Parse a line.
+	 * 
+	 * @param line
+	 *            the line.
+	 * @throws ParseException
+	 *             if the line cannot be parsed.
+	 */
+	private void parseLine(String line) throws ParseException {
+		int count = splitFields(line);
+		if (count > 0) {
+			if (continuedZone != null) {
+				addZoneDetail(continuedZone, parseZoneDetail(0, count));
+			} else if (fields[0].equals("Rule")) {
+				parseRule(count);
+			} else if (fields[0].equals("Zone")) {
+				parseZone(count);
+			} else if (fields[0].equals("Link")) {
+				parseLink(count);
+			} else {
+				throw new ParseException("Unexpected " + fields[0], 0);
+			}
+		}
+	}
+
+	/**
+	 * Parse a rule line.
+	 * 
+	 * @param count
+	 *            the number of fields.
+	 * @throws ParseException
+	 *             if the line cannot be parsed.
+	 */
+	private void parseRule(int count) throws ParseException {
+		checkFieldCount(count, RULE_FIELDS, RULE_FIELDS);
+
+		int field = 1;
+		String ruleName = parseId(field++);
+
+		Rule rule = new Rule();
+		rule.setName(ruleName);
+
+		String from = fields[field];
+		if (from.equals("min")) {
+			rule.setFromType(YearValueType.min);
+		} else if (from.equals("max")) {
+			rule.setFromType(YearValueType.max);
+		} else {
+			rule.setFrom(parseInt(field));
+			rule.setFromType(YearValueType.value);
+		}
+		++field;
+
+		String to = fields[field];
+		if (to.equals("min")) {
+			rule.setToType(YearValueType.min);
+		} else if (to.equals("max")) {
+			rule.setToType(YearValueType.max);
+		} else if (to.equals("only")) {
+			rule.setToType(YearValueType.value);
+			rule.setToTypeOnly(true);
+		} else {
+			rule.setTo(parseInt(field));
+			rule.setToType(YearValueType.value);
+		}
+		++field;
+
+		rule.setType(parseYearType(field++));
+
+		rule.setIn(parseMonth(field++));
+
+		OnType onType = parseOnType(field);
+		rule.setOn(parseOn(field, onType));
+		rule.setOnType(onType);
+		if (onType == OnType.let || onType == OnType.get) {
+			rule.setOnTypeValue(parseOnTypeValue(field));
+		}
+		++field;
+
+		String at = fields[field];
+		if (at.equals("-")) {
+			rule.setAt(0);
+			rule.setAtType(TimeOfDayType.wallclock);
+		} else {
+			rule.setAt(parseTimeOfDay(field));
+			rule.setAtType(parseTimeOfDayType(field));
+		}
+		++field;
+
+		rule.setSave(parseOffset(field++));
+
+		if (fields[field].equals("-")) {
+			rule.setLetters(null);
+		} else {
+			rule.setLetters(parseId(field));
+		}
+
+		Map<String, List<Rule>> ruleLists = document.getRuleLists();
+		List<Rule> rules = ruleLists.get(ruleName);
+		if (rules == null) {
+			rules = new ArrayList<Rule>();
+			ruleLists.put(ruleName, rules);
+		}
+		rules.add(rule);
+	}
+
+	/**
+	 * Parse the first line of a zone.
+	 * 
+	 * @param count
+	 *            the number of fields.
+	 * @throws ParseException
+	 *             if the line cannot be parsed.
+	 */
+	private void parseZone(int count) throws ParseException {
+		checkFieldCount(count, 2 + DETAIL_FIELDS, 2 + DETAIL_FIELDS
+				+ UNTIL_FIELDS);
+
+		String zoneName = parseId(1);
+		ZoneDetail zoneDetail = parseZoneDetail(2, count);
+
+		Map<String, Zone> zones = document.getZones();
+		Zone zone = zones.get(zoneName);
+		if (zone == null) {
+			zone = new Zone();
+			zone.setName(zoneName);
+			zones.put(zoneName, zone);
+		}
+		addZoneDetail(zone, zoneDetail);
+	}
+
+	/**
+	 * Add a detail to a zone, and expect a continuation line if the detail
+	 * has an until.
+	 * 
+	 * @param zone
+	 *            the zone.
+	 * @param zoneDetail
+	 *            the detail.
+	 */
+	private void addZoneDetail(Zone zone, ZoneDetail zoneDetail) {
+		zone.getDetails().add(zoneDetail);
+		if (zoneDetail.getUntil() != null) {
+			continuedZone = zone;
+		} else {
+			continuedZone = null;
+		}
+	}
+
+	/**
+	 * Parse the detail of a zone, from either its first line or a
+	 * continuation line.
+	 * 
+	 * @param field
+	 *            the first field of the detail.
+	 * @param count
+	 *            the number of fields.
+	 * @return the detail.
+	 * @throws ParseException
+	 *             if the line cannot be parsed.
+	 */
+	private ZoneDetail parseZoneDetail(int field, int count)
+			throws ParseException {
+		checkFieldCount(count, field + DETAIL_FIELDS, field + DETAIL_FIELDS
+				+ UNTIL_FIELDS);
+
+		ZoneDetail zoneDetail = new ZoneDetail();
+
+		zoneDetail.setUtcOffset(parseOffset(field++));
+
+		String zoneRules = fields[field];
+		if (zoneRules.equals("-")) {
+			zoneDetail.setSave(0);
+		} else if (Character.isDigit(zoneRules.charAt(0))) {
+			zoneDetail.setSave(parsePositiveTime(field, zoneRules.length()));
+		} else {
+			zoneDetail.setRules(resolveRuleList(parseId(field), zoneDetail));
+		}
+		++field;
+
+		String[] formats = parseId(field++).split("/");
+		zoneDetail.setFormat(formats[0]);
+		if (formats.length == 2) {
+			zoneDetail.setDstFormat(formats[1]);
+		} else {
+			zoneDetail.setDstFormat(null);
+		}
+
+		if (field < count) {
+			zoneDetail.setUntil(parseInt(field++));
+			if (field < count) {
+				zoneDetail.setUntilIn(parseMonth(field++));
+			} else {
+				zoneDetail.setUntilIn(null);
+			}
+			if (field < count) {
+				OnType onType = parseOnType(field);
+				zoneDetail.setUntilOn(parseOn(field, onType));
+				zoneDetail.setUntilOnType(onType);
+				if (onType == OnType.let || onType == OnType.get) {
+					zoneDetail.setUntilOnTypeValue(parseOnTypeValue(field));
+				} else {
+					zoneDetail.setUntilOnTypeValue(0);
+				}
+				++field;
+			} else {
+				zoneDetail.setUntilOn(null);
+				zoneDetail.setUntilOnType(null);
+				zoneDetail.setUntilOnTypeValue(0);
+			}
+			if (field < count) {
+				if (fields[field].equals("-")) {
+					zoneDetail.setUntilAt(0);
+					zoneDetail.setUntilAtType(TimeOfDayType.wallclock);
+				} else {
+					zoneDetail.setUntilAt(parseTimeOfDay(field));
+					zoneDetail.setUntilAtType(parseTimeOfDayType(field));
+				}
+			} else {
+				zoneDetail.setUntilAt(null);
+				zoneDetail.setUntilAtType(null);
+			}
+		}
+
+		return zoneDetail;
+	}
+
+	/**
+	 * Parse a link line.
+	 * 
+	 * @param count
+	 *            the number of fields.
+	 * @throws ParseException
+	 *             if the line cannot be parsed.
+	 */
+	private void parseLink(int count) throws ParseException {
+		checkFieldCount(count, LINK_FIELDS, LINK_FIELDS);
+
+		String linkFromZoneName = parseId(1);
+		String zoneName = parseId(2);
+		document.getLinks().add(
+				new LinkDeclaration(linkFromZoneName, zoneName));
+	}
+
+	/**
+	 * Obtain the rules of a given name for a zone detail. The list is created
+	 * upon first reference and filled in as the rules are declared.
+	 * 
+	 * @param ruleName
+	 *            the name of the rules.
+	 * @param zoneDetail
+	 *            the detail referring to them.
+	 * @return the rules.
+	 */
+	private List<Rule> resolveRuleList(String ruleName, ZoneDetail zoneDetail) {
+		Map<String, List<Rule>> ruleLists = document.getRuleLists();
+		List<Rule> rules = ruleLists.get(ruleName);
+		if (rules == null) {
+			rules = new ArrayList<Rule>();
+			ruleLists.put(ruleName, rules);
+		}
+		if (rules.isEmpty()) {
+			forwardRuleReferences.add(new RuleReference(zoneDetail, ruleName));
+		}
+		return rules;
+	}
+
+	/**
+	 * Resolve the references made to rules before they were declared. Those
+	 * to rules that the document never declared are left to the linker, and
+	 * the lists created for them are removed.
+	 */
+	private void resolveForwardRuleReferences() {
+		Map<String, List<Rule>> ruleLists = document.getRuleLists();
+		for (RuleReference ruleReference : forwardRuleReferences) {
+			ZoneDetail zoneDetail = ruleReference.getDetail();
+			if (zoneDetail.getRules().isEmpty()) {
+				zoneDetail.setRules(null);
+				ruleLists.remove(ruleReference.getRuleName());
+				document.getRuleReferences().add(ruleReference);
+			}
+		}
+		forwardRuleReferences.clear();
+	}
+
+	/**
+	 * Ensure that a line has an acceptable number of fields.
+	 * 
+	 * @param count
+	 *            the number of fields.
+	 * @param min
+	 *            the fewest fields accepted.
+	 * @param max
+	 *            the most fields accepted.
+	 * @throws ParseException
+	 *             if the number of fields is not accepted.
+	 */
+	private void checkFieldCount(int count, int min, int max)
+			throws ParseException {
+		if (count < min || count > max) {
+			throw new ParseException("Expected " + min + " to " + max
+					+ " fields but found " + count, count);
+		}
+	}
+
+	/**
+	 * Parse an identifier such as a name or format.
+	 * 
+	 * @param field
+	 *            the field.
+	 * @return the identifier.
+	 * @throws ParseException
+	 *             if the field is not an identifier.
+	 */
+	private String parseId(int field) throws ParseException {
+		String id = fields[field];
+		char c = id.charAt(0);
+		boolean valid = (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z')
+				|| c == '%';
+		for (int i = 1; i < id.length() && valid; ++i) {
+			c = id.charAt(i);
+			valid = (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z')
+					|| (c >= '0' && c <= '9') || c == '%' || c == '/'
+					|| c == '_' || c == '-' || c == '+';
+		}
+		if (!valid) {
+			throw new ParseException("Expected a name but found " + id, field);
+		}
+		return id;
+	}
+
+	/**
+	 * Parse a number.
+	 * 
+	 * @param field
+	 *            the field.
+	 * @return the number.
+	 * @throws ParseException
+	 *             if the field is not a number.
+	 */
+	private int parseInt(int field) throws ParseException {
+		String value = fields[field];
+		return parseDigits(value, 0, value.length(), field);
+	}
+
+	/**
+	 * Parse a run of digits.
+	 * 
+	 * @param value
+	 *            the characters.
+	 * @param start
+	 *            the first digit.
+	 * @param end
+	 *            the end of the digits.
+	 * @param field
+	 *            the field being parsed.
+	 * @return the number.
+	 * @throws ParseException
+	 *             if the characters are not all digits.
+	 */
+	private int parseDigits(String value, int start, int end, int field)
+			throws ParseException {
+		if (start == end) {
+			throw new ParseException("Expected a number but found " + value,
+					field);
+		}
+		int number = 0;
+		for (int i = start; i < end; ++i) {
+			char c = value.charAt(i);
+			if (c < '0' || c > '9') {
+				throw new ParseException("Expected a number but found "
+						+ value, field);
+			}
+			number = number * 10 + (c - '0');
+		}
+		return number;
+	}
+
+	/**
+	 * Parse a time of hours with optional minutes and seconds.
+	 * 
+	 * @param field
+	 *            the field.
+	 * @param end
+	 *            the end of the time within the field.
+	 * @return the time in seconds.
+	 * @throws ParseException
+	 *             if the field is not a time.
+	 */
+	private int parsePositiveTime(int field, int end) throws ParseException {
+		return parsePositiveTime(fields[field], 0, end, field);
+	}
+
+	/**
+	 * Parse a time of hours with optional minutes and seconds.
+	 * 
+	 * @param value
+	 *            the characters.
+	 * @param start
+	 *            the start of the time.
+	 * @param end
+	 *            the end of the time.
+	 * @param field
+	 *            the field being parsed.
+	 * @return the time in seconds.
+	 * @throws ParseException
+	 *             if the characters are not a time.
+	 */
+	private int parsePositiveTime(String value, int start, int end, int field)
+			throws ParseException {
+		int seconds = 0;
+		int multiplier = SECONDS_PER_HOUR;
+		int partStart = start;
+		while (partStart <= end) {
+			if (multiplier == 0) {
+				throw new ParseException("Expected a time but found " + value,
+						field);
+			}
+			int partEnd = value.indexOf(':', partStart);
+			if (partEnd < 0 || partEnd > end) {
+				partEnd = end;
+			}
+			seconds += parseDigits(value, partStart, partEnd, field)
+					* multiplier;
+			multiplier /= SECONDS_PER_MINUTE;
+			partStart = partEnd + 1;
+		}
+		return seconds;
+	}
+
+	/**
+	 * Parse an optionally negative time.
+	 * 
+	 * @param field
+	 *            the field.
+	 * @return the time in seconds.
+	 * @throws ParseException
+	 *             if the field is not a time.
+	 */
+	private int parseOffset(int field) throws ParseException {
+		String value = fields[field];
+		int seconds;
+		if (value.equals("-")) {
+			seconds = 0;
+		} else if (value.charAt(0) == '-') {
+			seconds = -parsePositiveTime(value, 1, value.length(), field);
+		} else {
+			seconds = parsePositiveTime(value, 0, value.length(), field);
+		}
+		return seconds;
+	}
+
+	/**
+	 * Parse a time of day, excluding any suffix.
+	 * 
+	 * @param field
+	 *            the field.
+	 * @return the time in seconds.
+	 * @throws ParseException
+	 *             if the field is not a time of day.
+	 */
+	private int parseTimeOfDay(int field) throws ParseException {
+		String value = fields[field];
+		int end = value.length();
+		if (!Character.isDigit(value.charAt(end - 1))) {
+			--end;
+		}
+		return parsePositiveTime(field, end);
+	}
+
+	/**
+	 * Parse the suffix of a time of day.
+	 * 
+	 * @param field
+	 *            the field.
+	 * @return the type of time.
+	 * @throws ParseException
+	 *             if the suffix is not recognised.
+	 */
+	private TimeOfDayType parseTimeOfDayType(int field) throws ParseException {
+		String value = fields[field];
+		char suffix = value.charAt(value.length() - 1);
+		TimeOfDayType type;
+		if (Character.isDigit(suffix)) {
+			type = TimeOfDayType.wallclock;
+		} else {
+			switch (suffix) {
+			case 'w':
+				type = TimeOfDayType.wallclock;
+				break;
+			case 's':
+			case 'g':
+				type = TimeOfDayType.localStandard;
+				break;
+			case 'u':
+			case 'z':
+				type = TimeOfDayType.universal;
+				break;
+			default:
+				throw new ParseException("Expected a time of day but found "
+						+ value, field);
+			}
+		}
+		return type;
+	}
+
+	/**
+	 * Parse the type of years of a rule.
+	 * 
+	 * @param field
+	 *            the field.
+	 * @return the type of years.
+	 * @throws ParseException
+	 *             if the type is not recognised.
+	 */
+	private YearType parseYearType(int field) throws ParseException {
+		String value = fields[field];
+		YearType type;
+		if (value.equals("-")) {
+			type = YearType.inclusive;
+		} else if (value.equals("even")) {
+			type = YearType.even;
+		} else if (value.equals("odd")) {
+			type = YearType.odd;
+		} else if (value.equals("uspres")) {
+			type = YearType.uspres;
+		} else if (value.equals("nonpres")) {
+			type = YearType.nonpres;
+		} else if (value.equals("nonuspres")) {
+			type = YearType.nonuspres;
+		} else {
+			throw new ParseException("Expected a type of year but found "
+					+ value, field);
+		}
+		return type;
+	}
+
+	/**
+	 * Parse a month, named in full or abbreviated.
+	 * 
+	 * @param field
+	 *            the field.
+	 * @return the month as a Calendar value.
+	 * @throws ParseException
+	 *             if the month is not recognised.
+	 */
+	private int parseMonth(int field) throws ParseException {
+		String value = fields[field];
+		int month = indexOfName(MONTHS, value, 0, value.length());
+		if (month < 0) {
+			throw new ParseException("Expected a month but found " + value,
+					field);
+		}
+		return month + Calendar.JANUARY;
+	}
+
+	/**
+	 * Find a name, in full or abbreviated, within an array of names.
+	 * 
+	 * @param names
+	 *            the names.
+	 * @param value
+	 *            the characters.
+	 * @param start
+	 *            the start of the name.
+	 * @param end
+	 *            the end of the name.
+	 * @return the index of the name or -1 if not found.
+	 */
+	private static int indexOfName(String[] names, String value, int start,
+			int end) {
+		int length = end - start;
+		int index = -1;
+		for (int i = 0; i < names.length && index < 0; ++i) {
+			String name = names[i];
+			if ((length == ABBREVIATION_LENGTH || length == name.length())
+					&& name.regionMatches(0, value, start, length)) {
+				index = i;
+			}
+		}
+		return index;
+	}
+
+	/**
+	 * Determine the type of a day of the month.
+	 * 
+	 * @param field
+	 *            the field.
+	 * @return the type.
+	 */
+	private OnType parseOnType(int field) {
+		String value = fields[field];
+		OnType onType;
+		if (value.startsWith("last")) {
+			onType = OnType.last;
+		} else if (value.indexOf("<=") > 0) {
+			onType = OnType.let;
+		} else if (value.indexOf(">=") > 0) {
+			onType = OnType.get;
+		} else {
+			onType = OnType.value;
+		}
+		return onType;
+	}
+
+	/**
+	 * Parse a day of the month or the day of the week that it is relative
+	 * to.
+	 * 
+	 * @param field
+	 *            the field.
+	 * @param onType
+	 *            the type of the day.
+	 * @return the day of the month or the day of the week as a Calendar
+	 *         value.
+	 * @throws ParseException
+	 *             if the day is not recognised.
+	 */
+	private int parseOn(int field, OnType onType) throws ParseException {
+		String value = fields[field];
+		int on;
+		if (onType == OnType.value) {
+			on = parseInt(field);
+		} else {
+			int start;
+			int end;
+			if (onType == OnType.last) {
+				start = "last".length();
+				if (start < value.length() && value.charAt(start) == '-') {
+					++start;
+				}
+				end = value.length();
+			} else {
+				start = 0;
+				end = value.indexOf(onType == OnType.let ? "<=" : ">=");
+			}
+			int dayOfWeek = indexOfName(DAYS_OF_WEEK, value, start, end);
+			if (dayOfWeek < 0) {
+				throw new ParseException("Expected a day of the week but found "
+						+ value, field);
+			}
+			on = dayOfWeek + Calendar.SUNDAY;
+		}
+		return on;
+	}
+
+	/**
+	 * Parse the day of the month that a day of the week is relative to.
+	 * 
+	 * @param field
+	 *            the field.
+	 * @return the day of the month.
+	 * @throws ParseException
+	 *             if the day is not a number.
+	 */
+	private int parseOnTypeValue(int field) throws ParseException {
+		String value = fields[field];
+		int start = Math.max(value.indexOf("<="), value.indexOf(">=")) + 2;
+		return parseDigits(value, start, value.length(), field);
+	}
+}
@@ -0,0 +1,279 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.classactionpl.tz;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import com.classactionpl.tz.ZoneinfoDocument.LinkDeclaration;
+import com.classactionpl.tz.ZoneinfoDocument.RuleReference;
+
+/**
+ * Combines parsed zoneinfo documents into a single set of zones, resolving
+ * the references between them. Rules are shared between documents, so a zone
+ * of one document may use the rules of another; where several documents
+ * declare rules of the same name, the first document added provides them.
+ * Links are resolved against the zones of all documents added, along with
+ * any zones already held, and may be to other links. Instances are not thread
+ * safe.
+ * 
+ * @author huntc
+ * 
+ */
+final class ZoneinfoLinker {
+
+	/**
+	 * The zones to append to.
+	 */
+	private final Map<String, AbstractZone> zones;
+
+	/**
+	 * The zones of the documents added, which alone may be appended to.
+	 */
+	private final Map<AbstractZone, Boolean> addedZones = new IdentityHashMap<AbstractZone, Boolean>();
+
+	/**
+	 * The rules of all documents added, keyed by name.
+	 */
+	private final Map<String, List<Rule>> ruleLists = new HashMap<String, List<Rule>>();
+
+	/**
+	 * The rule references yet to be resolved.
+	 */
+	private final List<RuleReference> ruleReferences = new ArrayList<RuleReference>();
+
+	/**
+	 * The links yet to be resolved.
+	 */
+	private final List<LinkDeclaration> links = new ArrayList<LinkDeclaration>();
+
+	/**
+	 * Construct the linker.
+	 * 
+	 * @param zones
+	 *            the zones to append to.
+	 */
+	ZoneinfoLinker(Map<String, AbstractZone> zones) {
+		this.zones = zones;
+	}
+
+	/**
+	 * Add the zones of a document, and note the references that it makes.
+	 * The details of a zone that an earlier document added are appended to
+	 * it. Zones that were already held are replaced rather than changed, as
+	 * they may be in use.
+	 * 
+	 * @param document
+	 *            the document.
+	 */
+	void add(ZoneinfoDocument document) {
+		for (Zone zone : document.getZones().values()) {
+			String zoneName = zone.getName();
+			AbstractZone existingZone = zones.get(zoneName);
+			if (existingZone != null && addedZones.containsKey(existingZone)) {
+				((Zone) existingZone).getDetails().addAll(zone.getDetails());
+			} else {
+				zones.put(zoneName, zone);
+				addedZones.put(zone, Boolean.TRUE);
+			}
+		}
+
+		addRules(document.getRuleLists());
+
+		ruleReferences.addAll(document.getRuleReferences());
+		links.addAll(document.getLinks());
+	}
+
+	/**
+	 * Make rules available to the documents added, without adding any zones.
+	 * Rules of a name that has already been added are ignored.
+	 * 
+	 * @param documentRuleLists
+	 *            the rules keyed by name.
+	 */
+	void addRules(Map<String, List<Rule>> documentRuleLists) {
+		for (Map.Entry<String, List<Rule>> entry : documentRuleLists
+				.entrySet()) {
+			if (!ruleLists.containsKey(entry.getKey())) {
+				ruleLists.put(entry.getKey(), entry.getValue());
+			}
+		}
+	}
+
+	/**
+	 * Resolve the references of the documents added, in bulk, so that the
+	 * order in which documents were added and declarations were made within
+	 * them does not matter. Links may be to other links, however the chain is
+	 * declared. Details whose rules were never declared are left without
+	 * rules, and links to zones that are not held are dropped; both are
+	 * reported.
+	 * 
+	 * @return a report of the references that could not be resolved.
+	 */
+	Report link() {
+		Report report = new Report();
+
+		for (RuleReference ruleReference : ruleReferences) {
+			String ruleName = ruleReference.getRuleName();
+			List<Rule> rules = ruleLists.get(ruleName);
+			ruleReference.getDetail().setRules(rules);
+			if (rules == null) {
+				report.unresolvedRuleNames.add(ruleName);
+			}
+		}
+		ruleReferences.clear();
+
+		// Later declarations of a link replace earlier ones.
+		Map<String, String> pendingLinks = new LinkedHashMap<String, String>();
+		for (LinkDeclaration linkDeclaration : links) {
+			pendingLinks.remove(linkDeclaration.getName());
+			pendingLinks.put(linkDeclaration.getName(), linkDeclaration
+					.getTargetName());
+		}
+		links.clear();
+
+		// A link is made once what it links to is no longer pending, so each
+		// pass makes the next link of every chain.
+		boolean progressed = true;
+		while (progressed && !pendingLinks.isEmpty()) {
+			progressed = false;
+			Iterator<Map.Entry<String, String>> pendingLinkIterator = pendingLinks
+					.entrySet().iterator();
+			while (pendingLinkIterator.hasNext()) {
+				Map.Entry<String, String> pendingLink = pendingLinkIterator
+						.next();
+				String targetName = pendingLink.getValue();
+				if (!pendingLinks.containsKey(targetName)) {
+					AbstractZone targetZone = zones.get(targetName);
+					if (targetZone != null) {
+						Link zone = new Link();
+						String zoneName = pendingLink.getKey();
+						zone.setName(zoneName);
+						zone.setTargetZone(targetZone);
+						zones.put(zoneName, zone);
+					} else {
+						report.unresolvedLinks.put(pendingLink.getKey(),
+								targetName);
+					}
+					pendingLinkIterator.remove();
+					progressed = true;
+				}
+			}
+		}
+		// What remains links in a cycle.
+		report.unresolvedLinks.putAll(pendingLinks);
+
+		return report;
+	}
+
+	/**
+	 * Point links at the zones that have replaced the ones they link to, and
+	 * drop links to zones that are no longer held. Links are replaced rather
+	 * than changed as they may be in use.
+	 * 
+	 * @param zones
+	 *            the zones, including links, keyed by id.
+	 * @return the replacement of each link re-targeted, keyed by the link
+	 *         replaced.
+	 */
+	static Map<AbstractZone, AbstractZone> retargetLinks(
+			Map<String, AbstractZone> zones) {
+		List<AbstractZone> links = new ArrayList<AbstractZone>();
+		for (AbstractZone zone : zones.values()) {
+			if (zone instanceof Link) {
+				links.add(zone);
+			}
+		}
+
+		Map<AbstractZone, AbstractZone> replacements = new IdentityHashMap<AbstractZone, AbstractZone>();
+		for (AbstractZone zone : links) {
+			Zone targetZone = zone.getCanonicalZone();
+			AbstractZone currentZone;
+			if (targetZone != null) {
+				currentZone = zones.get(targetZone.getName());
+			} else {
+				currentZone = null;
+			}
+			Zone currentTargetZone;
+			if (currentZone != null) {
+				currentTargetZone = currentZone.getCanonicalZone();
+			} else {
+				currentTargetZone = null;
+			}
+
+			if (currentTargetZone == null) {
+				zones.remove(zone.getName());
+			} else if (currentTargetZone != targetZone) {
+				Link link = new Link();
+				link.setName(zone.getName());
+				link.setTargetZone(currentTargetZone);
+				zones.put(link.getName(), link);
+				replacements.put(zone, link);
+			}
+		}
+		return replacements;
+	}
+
+	/**
+	 * The references that could not be resolved when linking.
+	 */
+	static final class Report {
+		/** */
+		private final Set<String> unresolvedRuleNames = new TreeSet<String>();
+		/** */
+		private final Map<String, String> unresolvedLinks = new TreeMap<String, String>();
+
+		/**
+		 * @return the names of rules referred to but never declared.
+		 */
+		Set<String> getUnresolvedRuleNames() {
+			return unresolvedRuleNames;
+		}
+
+		/**
+		 * @return the names of the links dropped, along with the names of
+		 *         the zones that they link to.
+		 */
+		Map<String, String> getUnresolvedLinks() {
+			return unresolvedLinks;
+		}
+
+		/**
+		 * @return true if every reference was resolved.
+		 */
+		boolean isResolved() {
+			return unresolvedRuleNames.isEmpty() && unresolvedLinks.isEmpty();
+		}
+
+		@Override
+		public String toString() {
+			return "Report [unresolvedRuleNames=" + unresolvedRuleNames
+					+ ", unresolvedLinks=" + unresolvedLinks + "]";
+		}
+	}
+}
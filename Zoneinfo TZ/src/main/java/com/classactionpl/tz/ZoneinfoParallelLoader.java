@@ -0,0 +1,197 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.classactionpl.tz;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Loads a set of zoneinfo documents by parsing them concurrently and then
+ * linking them together. Each document is parsed on its own into its rules,
+ * zones and links; the references between documents are then resolved in a
+ * single pass, so a zone of one document may use the rules of another and
+ * links may be to zones of any document. The zones produced are the same as
+ * those of parsing the documents one after another, in the order given.
+ * <p>
+ * Documents that cannot be read are logged and skipped, as are references
+ * that cannot be resolved.
+ * 
+ * @author huntc
+ * 
+ */
+public class ZoneinfoParallelLoader {
+
+	/** */
+	private static Logger logger = Logger
+			.getLogger(ZoneinfoParallelLoader.class);
+
+	/**
+	 * Parses the documents, or null if a pool is to be created for each
+	 * load.
+	 */
+	private final ExecutorService executor;
+
+	/**
+	 * Load documents using a pool of threads, one per processor, created for
+	 * each load.
+	 */
+	public ZoneinfoParallelLoader() {
+		this(null);
+	}
+
+	/**
+	 * Load documents using a given executor.
+	 * 
+	 * @param executor
+	 *            parses the documents. It is not shut down by the loader.
+	 */
+	public ZoneinfoParallelLoader(ExecutorService executor) {
+		this.executor = executor;
+	}
+
+	/**
+	 * Load a set of documents into a map of zones keyed by the zone ids. The
+	 * map is only changed once every document has been parsed, so it is left
+	 * as it was if the load is interrupted.
+	 * 
+	 * @param documents
+	 *            the documents, in the order that their declarations take
+	 *            precedence.
+	 * @param zones
+	 *            the zones to append to.
+	 * @throws InterruptedException
+	 *             if interrupted while waiting for the documents to be
+	 *             parsed. Parses yet to complete are cancelled.
+	 */
+	public void load(List<URL> documents, Map<String, AbstractZone> zones)
+			throws InterruptedException {
+		ExecutorService resolvedExecutor = executor;
+		if (resolvedExecutor == null) {
+			int threads = Math.max(1, Math.min(documents.size(), Runtime
+					.getRuntime().availableProcessors()));
+			resolvedExecutor = Executors.newFixedThreadPool(threads);
+		}
+
+		List<Future<ZoneinfoDocument>> parses = new ArrayList<Future<ZoneinfoDocument>>(
+				documents.size());
+		List<ZoneinfoDocument> parsedDocuments = new ArrayList<ZoneinfoDocument>(
+				documents.size());
+		try {
+			for (URL document : documents) {
+				parses.add(resolvedExecutor.submit(new Parse(document)));
+			}
+			for (int i = 0; i < parses.size(); ++i) {
+				try {
+					parsedDocuments.add(parses.get(i).get());
+				} catch (ExecutionException e) {
+					logger.error("Unable to read " + documents.get(i), e
+							.getCause());
+				}
+			}
+		} finally {
+			for (Future<ZoneinfoDocument> parse : parses) {
+				parse.cancel(true);
+			}
+			if (resolvedExecutor != executor) {
+				resolvedExecutor.shutdownNow();
+			}
+		}
+
+		ZoneinfoLinker linker = new ZoneinfoLinker(zones);
+		for (ZoneinfoDocument parsedDocument : parsedDocuments) {
+			linker.add(parsedDocument);
+		}
+		ZoneinfoLinker.Report report = linker.link();
+		if (!report.isResolved()) {
+			logger.warn("Unresolved zoneinfo references: " + report);
+		}
+	}
+
+	/**
+	 * Load a set of documents and publish their zones, along with those that
+	 * a registry already holds, to the registry in a single step. Zones that
+	 * the registry already publishes are replaced rather than changed, links
+	 * of the registry follow the zones that replace what they link to, and
+	 * nothing is published if the load is interrupted.
+	 * 
+	 * @param registry
+	 *            the registry.
+	 * @param documents
+	 *            the documents, in the order that their declarations take
+	 *            precedence.
+	 * @throws InterruptedException
+	 *             if interrupted while waiting for the documents to be
+	 *             parsed.
+	 */
+	public void load(ZoneRegistry registry, List<URL> documents)
+			throws InterruptedException {
+		Map<String, AbstractZone> zones = new HashMap<String, AbstractZone>(
+				registry.getZones());
+		load(documents, zones);
+		ZoneinfoLinker.retargetLinks(zones);
+		registry.setZones(zones);
+	}
+
+	/**
+	 * Parses a document.
+	 */
+	private static final class Parse implements Callable<ZoneinfoDocument> {
+		/**
+		 * The document.
+		 */
+		private final URL document;
+
+		/**
+		 * Construct the task.
+		 * 
+		 * @param document
+		 *            the document.
+		 */
+		Parse(URL document) {
+			this.document = document;
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		public ZoneinfoDocument call() throws IOException {
+			InputStream in = document.openStream();
+			try {
+				return new ZoneinfoLineParser().parse(new InputStreamReader(
+						in));
+			} finally {
+				in.close();
+			}
+		}
+	}
+}
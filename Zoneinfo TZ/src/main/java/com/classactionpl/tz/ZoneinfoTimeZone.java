@@ -19,22 +19,31 @@
 
 package com.classactionpl.tz;
 
-import java.util.ArrayList;
 import java.util.Calendar;
-import java.util.Collection;
 import java.util.Date;
 import java.util.GregorianCalendar;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
-import java.util.Set;
 import java.util.TimeZone;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * A concrete implementation of TimeZone that provides zoneinfo capabilities.
- * This class is entirely thread safe and the internal zone structure can be
- * mutated at any time.
+ * This class is entirely thread safe. Zones compile their details upon first
+ * use, so a zone, its details and their rules must not be changed once the
+ * zone is in use; changes made afterwards are not seen. Replace the zone as a
+ * whole instead, either with setZone on an unshared time zone or by
+ * publishing new zones to a registry.
+ * <p>
+ * Time zones obtained from a ZoneRegistry are bound to it; the static methods
+ * of this class look up time zones in the default registry.
+ * <p>
+ * getOffset(long) remembers the interval of its previous answer. Time zones
+ * obtained by id are shared, and so is this interval: callers that look up
+ * times of different intervals concurrently displace each other's interval,
+ * paying a small allocation upon each lookup. Such callers should keep a
+ * clone of their own.
  * 
  * @author huntc
  * 
@@ -44,132 +53,206 @@ public class ZoneinfoTimeZone extends TimeZone {
 	/** */
 	private static final long serialVersionUID = 1L;
 
-	/**
-	 * Cache the time zone representing UTC for greater efficiency.
-	 */
-	private static final TimeZone UTC_TZ = TimeZone.getTimeZone("GMT");
+	/** */
+	private static final int MILLIS_PER_SECOND = 1000;
 
 	/**
-	 * The default number of time zones expecting to be handled.
+	 * Get the available ids of the default registry in a thread safe manner.
+	 * The ids are sorted.
+	 * 
+	 * @return {@inheritDoc}
 	 */
-	private static final int ZONES_ALLOCATION = 500;
-
-	/** */
-	private static final int MILLIS_PER_SECOND = 1000;
+	public static String[] getAvailableIDs() {
+		return ZoneRegistry.getDefault().getAvailableIDs();
+	}
 
 	/**
-	 * A map of time zone names to time zones that are available.
+	 * Get the available ids of the default registry without copying them.
+	 * 
+	 * @return the ids.
+	 * @see ZoneRegistry#getAvailableIDList()
 	 */
-	private static final Map<String, AbstractZone> ZONES = new ConcurrentHashMap<String, AbstractZone>(
-			ZONES_ALLOCATION);
+	public static List<String> getAvailableIDList() {
+		return ZoneRegistry.getDefault().getAvailableIDList();
+	}
 
 	/**
-	 * Get the available ids in a thread safe manner.
+	 * Get the version of the available ids of the default registry.
 	 * 
-	 * @return {@inheritDoc}
+	 * @return the version.
+	 * @see ZoneRegistry#getAvailableIDsVersion()
 	 */
-	public static String[] getAvailableIDs() {
-		Set<String> keySet = ZONES.keySet();
-		String[] ids = new String[keySet.size()];
-		keySet.toArray(ids);
-		return ids;
+	public static long getAvailableIDsVersion() {
+		return ZoneRegistry.getDefault().getAvailableIDsVersion();
 	}
 
 	/**
-	 * Get the available ids given an offset, in a thread safe manner.
+	 * Get the available ids of the default registry given an offset, in a
+	 * thread safe manner.
 	 * 
 	 * @param rawOffset
 	 *            {@inheritDoc}
 	 * @return {@inheritDoc}
 	 */
 	public static String[] getAvailableIDs(int rawOffset) {
-		int rawOffsetSeconds = rawOffset / MILLIS_PER_SECOND;
-		Collection<String> availableIds = new ArrayList<String>(ZONES.size());
-		Date when = new Date();
-		for (AbstractZone zone : ZONES.values()) {
-			ZoneDetail zoneDetail = zone.resolveDetail(when);
-			if (zoneDetail != null
-					&& zoneDetail.getUtcOffset() == rawOffsetSeconds) {
-				availableIds.add(zone.getName());
-			}
-		}
-		String[] availableIdsArray = new String[availableIds.size()];
-		return availableIds.toArray(availableIdsArray);
+		return ZoneRegistry.getDefault().getAvailableIDs(rawOffset);
 	}
 
 	/**
-	 * Get a time zone in a thread safe manner.
+	 * Get a time zone of the default registry in a thread safe manner. The
+	 * time zone is shared with other callers and so may not be changed; clone
+	 * it to obtain one that may be.
 	 * 
 	 * @param id
 	 *            {@inheritDoc}
 	 * @return {@inheritDoc}
 	 */
 	public static TimeZone getTimeZone(String id) {
-		ZoneinfoTimeZone timeZone = null;
-
-		AbstractZone zone = ZONES.get(id);
-		if (zone != null) {
-			timeZone = new ZoneinfoTimeZone();
-			timeZone.setZone(zone);
-		}
+		return ZoneRegistry.getDefault().getTimeZone(id);
+	}
 
-		return timeZone;
+	/**
+	 * Get a time zone of the default registry in a thread safe manner,
+	 * without requiring a string for its id.
+	 * 
+	 * @param id
+	 *            the id.
+	 * @return the time zone or null if there is none with the id.
+	 * @see ZoneRegistry#getTimeZone(CharSequence)
+	 */
+	public static TimeZone getTimeZone(CharSequence id) {
+		return ZoneRegistry.getDefault().getTimeZone(id);
 	}
 
 	/**
-	 * Get all of the zone objects.
+	 * Get all of the zone objects of the default registry.
 	 * 
 	 * @return the zone objects.
+	 * @see ZoneRegistry#getZones()
 	 */
 	public static Map<String, AbstractZone> getZones() {
-		return ZONES;
+		return ZoneRegistry.getDefault().getZones();
+	}
+
+	/**
+	 * Replace all of the zone objects of the default registry in a single
+	 * step.
+	 * 
+	 * @param zones
+	 *            the zones keyed by their ids. The map is copied.
+	 * @see ZoneRegistry#setZones(Map)
+	 */
+	public static void setZones(Map<String, AbstractZone> zones) {
+		ZoneRegistry.getDefault().setZones(zones);
+	}
+
+	/**
+	 * Create a time zone that is shared between the callers of a registry.
+	 * 
+	 * @param zone
+	 *            the zone or link.
+	 * @param registry
+	 *            the registry that the zone belongs to.
+	 * @return the time zone.
+	 */
+	static ZoneinfoTimeZone createShared(AbstractZone zone,
+			ZoneRegistry registry) {
+		ZoneinfoTimeZone timeZone = new ZoneinfoTimeZone();
+		timeZone.setZone(zone);
+		timeZone.registry = registry;
+		timeZone.shared = true;
+		return timeZone;
 	}
 
 	/**
-	 * The associated zoneinfo object.
+	 * The associated zoneinfo object. This may be a link, in which case its
+	 * name is the id of the time zone.
 	 */
 	private AbstractZone zone;
 
+	/**
+	 * The concrete zone that the associated zoneinfo object describes, and
+	 * that times are resolved against. Links are thereby resolved once, upon
+	 * association, rather than upon each call.
+	 */
+	private AbstractZone canonicalZone;
+
+	/**
+	 * The registry that the zone belongs to, or null if it was associated
+	 * directly.
+	 */
+	private transient ZoneRegistry registry;
+
+	/**
+	 * Whether this instance is shared between callers of getTimeZone, in
+	 * which case it may not be changed.
+	 */
+	private transient boolean shared;
+
+	/**
+	 * The interval that the last offset was resolved within, or null if there
+	 * is none.
+	 */
+	private transient volatile OffsetInterval lastOffsetInterval;
+
+	/**
+	 * Whether lookups of the last interval are counted. Counting is off by
+	 * default so that lookups of a shared time zone do not contend on the
+	 * counters.
+	 */
+	private transient volatile boolean offsetCacheCounting;
+
+	/**
+	 * The number of offsets resolved from the last interval.
+	 */
+	private final AtomicLong offsetCacheHits = new AtomicLong();
+
+	/**
+	 * The number of offsets resolved from the zone.
+	 */
+	private final AtomicLong offsetCacheMisses = new AtomicLong();
+
+	/**
+	 * Ensure that this instance may be changed.
+	 * 
+	 * @throws UnsupportedOperationException
+	 *             if it is shared.
+	 */
+	private void checkNotShared() {
+		if (shared) {
+			throw new UnsupportedOperationException(
+					"Shared time zones may not be changed; clone it first.");
+		}
+	}
+
 	@Override
 	public Object clone() {
 		super.clone();
 		ZoneinfoTimeZone timeZone = new ZoneinfoTimeZone();
 		timeZone.setZone(zone);
+		timeZone.registry = registry;
 		return timeZone;
 	}
 
+	/**
+	 * Return the abbreviation in use at a given point in time e.g. AEST or
+	 * AEDT.
+	 * 
+	 * @param when
+	 *            the time in milliseconds since the epoch.
+	 * @return the abbreviation or null if the zone has none at that time.
+	 */
+	public String getAbbreviation(long when) {
+		return canonicalZone.resolveAbbreviation(when);
+	}
+
 	@Override
 	public String getDisplayName(boolean daylight, int style, Locale locale) {
 		// This method always returns a short name as there is no concept of a
 		// long name in Zoneinfo. Locale isn't considered in the Zoneinfo
 		// specification either.
-		String displayName;
-
-		Date when = new Date();
-		ZoneDetail zoneDetail = zone.resolveDetail(when);
-		assert (zoneDetail != null);
-
-		if (daylight) {
-			displayName = zoneDetail.getDstFormat();
-		} else {
-			displayName = null;
-		}
-
-		if (displayName == null) {
-			displayName = zoneDetail.getFormat();
-		}
-
-		Rule rule = resolveRule(zoneDetail, when, daylight);
-
-		if (rule != null) {
-			String letters = rule.getLetters();
-			if (letters == null) {
-				letters = "";
-			}
-			displayName = String.format(displayName, letters);
-		}
-
-		return displayName;
+		return canonicalZone.resolveAbbreviation(System.currentTimeMillis(),
+				daylight);
 	}
 
 	@Override
@@ -185,7 +268,7 @@ public class ZoneinfoTimeZone extends TimeZone {
 	 * @return the savings in milliseconds.
 	 */
 	public int getDSTSavings(Date when) {
-		ZoneDetail zoneDetail = zone.resolveDetail(when);
+		ZoneDetail zoneDetail = canonicalZone.resolveDetail(when);
 		assert (zoneDetail != null);
 
 		Rule rule = resolveRule(zoneDetail, when, true);
@@ -208,29 +291,117 @@ public class ZoneinfoTimeZone extends TimeZone {
 	@Override
 	public int getOffset(int era, int year, int month, int day, int dayOfWeek,
 			int milliseconds) {
-		Calendar when = new GregorianCalendar(UTC_TZ);
-		when.set(Calendar.ERA, era);
-		when.set(Calendar.YEAR, year);
-		when.set(Calendar.MONTH, month);
-		when.set(Calendar.DAY_OF_MONTH, day);
-		// when.set(Calendar.DAY_OF_WEEK, dayOfWeek); // redundant and confuses
-		// the calendar object.
-		when.set(Calendar.HOUR_OF_DAY, 0);
-		when.set(Calendar.MINUTE, 0);
-		when.set(Calendar.SECOND, 0);
-		when.set(Calendar.MILLISECOND, milliseconds);
-		return getOffset(when.getTimeInMillis());
+		// The day of week is redundant given the date.
+		long resolvedYear;
+		if (era == GregorianCalendar.BC) {
+			resolvedYear = 1 - year;
+		} else {
+			resolvedYear = year;
+		}
+		int monthsPerYear = Calendar.DECEMBER + 1;
+		resolvedYear += CivilTime.floorDiv(month, monthsPerYear);
+		int resolvedMonth = (int) CivilTime.floorMod(month, monthsPerYear);
+
+		long when = CivilTime.daysFromCivil(resolvedYear, resolvedMonth, day)
+				* CivilTime.MILLIS_PER_DAY + milliseconds;
+		return getOffset(when);
 	}
 
 	@Override
 	public int getOffset(long date) {
-		return zone.resolveUtcOffset(new Date(date)) * MILLIS_PER_SECOND;
+		int offset;
+		OffsetInterval interval = lastOffsetInterval;
+		if (interval != null && interval.contains(date)) {
+			if (offsetCacheCounting) {
+				offsetCacheHits.incrementAndGet();
+			}
+			offset = interval.offset;
+		} else {
+			if (offsetCacheCounting) {
+				offsetCacheMisses.incrementAndGet();
+			}
+			ZoneTransitions transitions = canonicalZone.getTransitions();
+			if (transitions.covers(date)) {
+				int index = transitions.indexOf(date);
+				long end;
+				if (index + 1 < transitions.size()) {
+					end = transitions.getTransition(index + 1);
+				} else {
+					end = transitions.getHorizon();
+				}
+				offset = transitions.getUtcOffset(index) * MILLIS_PER_SECOND;
+				lastOffsetInterval = new OffsetInterval(transitions
+						.getTransition(index), end, offset);
+			} else {
+				offset = canonicalZone.resolveUtcOffset(date)
+						* MILLIS_PER_SECOND;
+			}
+		}
+		return offset;
+	}
+
+	/**
+	 * Return the offsets for a range of times, as per getOffset(long) for each
+	 * of them. Each offset is written to the same position in the output as
+	 * its time has in the input. Sorted times are resolved most efficiently.
+	 * 
+	 * @param instants
+	 *            the times in milliseconds since the epoch.
+	 * @param from
+	 *            the position of the first time to resolve.
+	 * @param len
+	 *            the number of times to resolve.
+	 * @param out
+	 *            receives the offsets in milliseconds.
+	 */
+	public void getOffsets(long[] instants, int from, int len, int[] out) {
+		canonicalZone.resolveUtcOffsets(instants, from, len, out);
+		int to = from + len;
+		for (int i = from; i < to; ++i) {
+			out[i] *= MILLIS_PER_SECOND;
+		}
+	}
+
+	/**
+	 * @return true if getOffset counts whether it is answered from the
+	 *         interval of the previous call.
+	 */
+	public boolean isOffsetCacheCounting() {
+		return offsetCacheCounting;
+	}
+
+	/**
+	 * Count whether getOffset is answered from the interval of the previous
+	 * call, or stop doing so. Counting contends between the threads that
+	 * share a time zone, so is best confined to measurement.
+	 * 
+	 * @param offsetCacheCounting
+	 *            true to count.
+	 */
+	public void setOffsetCacheCounting(boolean offsetCacheCounting) {
+		this.offsetCacheCounting = offsetCacheCounting;
+	}
+
+	/**
+	 * @return the number of times getOffset has been answered from the
+	 *         interval of the previous call while counting.
+	 */
+	public long getOffsetCacheHits() {
+		return offsetCacheHits.get();
+	}
+
+	/**
+	 * @return the number of times getOffset has had to look up the interval
+	 *         from the zone while counting.
+	 */
+	public long getOffsetCacheMisses() {
+		return offsetCacheMisses.get();
 	}
 
 	@Override
 	public int getRawOffset() {
 		Date when = new Date();
-		ZoneDetail zoneDetail = zone.resolveDetail(when);
+		ZoneDetail zoneDetail = canonicalZone.resolveDetail(when);
 		assert (zoneDetail != null);
 
 		return zoneDetail.getUtcOffset() * MILLIS_PER_SECOND;
@@ -240,27 +411,50 @@ public class ZoneinfoTimeZone extends TimeZone {
 		return zone;
 	}
 
+	/**
+	 * @return the registry that the time zone was obtained from, or null if
+	 *         its zone was associated directly.
+	 */
+	public ZoneRegistry getRegistry() {
+		return registry;
+	}
+
+	/**
+	 * @return the fingerprint of the zone's entire history of offsets.
+	 * @see ZoneTransitions#getFingerprint()
+	 */
+	public long getFingerprint() {
+		return canonicalZone.getTransitions().getFingerprint();
+	}
+
+	/**
+	 * Return the fingerprint of the zone's offsets within a window of time.
+	 * 
+	 * @param from
+	 *            the inclusive start of the window in milliseconds since the
+	 *            epoch.
+	 * @param to
+	 *            the exclusive end of the window in milliseconds since the
+	 *            epoch.
+	 * @return the fingerprint.
+	 * @see ZoneTransitions#getFingerprint()
+	 */
+	public long getFingerprint(long from, long to) {
+		return canonicalZone.getTransitions().getFingerprint(from, to);
+	}
+
 	@Override
 	public boolean hasSameRules(TimeZone other) {
-		// In order to keep things simple, and also questioning the utility of
-		// this method, we only potentially return true if both zones point to
-		// the same rule object.
+		// Zones have the same rules if they apply the same offsets from the
+		// start of this year onwards.
 		boolean sameRules;
 
 		if (other instanceof ZoneinfoTimeZone) {
-			Date when = new Date();
-
-			ZoneDetail zoneDetail1 = zone.resolveDetail(when);
-			assert (zoneDetail1 != null);
-			ZoneDetail zoneDetail2 = ((ZoneinfoTimeZone) other).getZone()
-					.resolveDetail(when);
-			assert (zoneDetail2 != null);
-
-			Rule rule1 = zoneDetail1.resolveRule(when);
-			Rule rule2 = zoneDetail2.resolveRule(when);
-
-			sameRules = (rule1 == rule2);
-
+			int year = CivilTime.yearOf(System.currentTimeMillis());
+			AbstractZone otherZone = ((ZoneinfoTimeZone) other).getZone();
+			ZoneTransitions transitions = canonicalZone.getTransitions();
+			sameRules = (transitions.getFingerprint(year) == otherZone
+					.getTransitions().getFingerprint(year));
 		} else {
 			sameRules = false;
 		}
@@ -285,39 +479,10 @@ public class ZoneinfoTimeZone extends TimeZone {
 	 * @return the rule found or null if none found.
 	 */
 	private Rule resolveRule(ZoneDetail zoneDetail, Date when, boolean daylight) {
-		Rule resolvedRule = null;
-
-		List<Rule> rules = zoneDetail.getRules();
-		if (rules != null) {
-			Rule rule = zoneDetail.resolveRule(when);
-			if (rule != null) {
-				if ((daylight && rule.getSave() != 0)
-						|| (!daylight && rule.getSave() == 0)) {
-					resolvedRule = rule;
-				} else {
-					// The rule we have doesn't match the request to return
-					// format details given the when date. We therefore need to
-					// track back and find a rule adjacent to the resolved rule
-					// that does match the criteria.
-					boolean rulePassed = false;
-					int rulesSize = rules.size();
-					if (rulesSize > 0) {
-						for (int i = rulesSize - 1; i >= 0; --i) {
-							Rule nextRule = rules.get(i);
-							if (nextRule.equals(rule)) {
-								rulePassed = true;
-							} else if ((daylight && nextRule.getSave() != 0)
-									|| (!daylight && nextRule.getSave() == 0)) {
-								resolvedRule = nextRule;
-							}
-
-							if (rulePassed && resolvedRule != null) {
-								break;
-							}
-						}
-					}
-				}
-			}
+		Rule resolvedRule;
+		if (zoneDetail.getRules() != null) {
+			resolvedRule = zoneDetail.resolveRule(zoneDetail.resolveRule(when),
+					daylight);
 		} else {
 			resolvedRule = null;
 		}
@@ -334,8 +499,41 @@ public class ZoneinfoTimeZone extends TimeZone {
 	public void setRawOffset(int offsetMillis) {
 	}
 
+	/**
+	 * Associate a zoneinfo object.
+	 * 
+	 * @param zone
+	 *            the zone or link.
+	 * @throws UnsupportedOperationException
+	 *             if the time zone is shared; clone it to obtain one that may
+	 *             be associated with another zone.
+	 */
 	public void setZone(AbstractZone zone) {
+		checkNotShared();
 		this.zone = zone;
+		registry = null;
+		AbstractZone resolvedCanonicalZone = zone.getCanonicalZone();
+		if (resolvedCanonicalZone != null) {
+			canonicalZone = resolvedCanonicalZone;
+		} else {
+			canonicalZone = zone;
+		}
+		lastOffsetInterval = null;
+	}
+
+	/**
+	 * The id is always that of the associated zoneinfo object, so setting it
+	 * has no effect on what getID() returns. Shared time zones ignore it
+	 * altogether; clone one to obtain a time zone that may be changed.
+	 * 
+	 * @param id
+	 *            {@inheritDoc}
+	 */
+	@Override
+	public void setID(String id) {
+		if (!shared) {
+			super.setID(id);
+		}
 	}
 
 	@Override
@@ -343,4 +541,48 @@ public class ZoneinfoTimeZone extends TimeZone {
 		return (getDSTSavings(new Date()) != 0);
 	}
 
+	/**
+	 * An interval of constant offset. Instances are immutable so that they
+	 * may be published to other threads without locking.
+	 */
+	private static final class OffsetInterval {
+		/**
+		 * The inclusive start of the interval.
+		 */
+		private final long start;
+		/**
+		 * The exclusive end of the interval.
+		 */
+		private final long end;
+		/**
+		 * The offset in milliseconds.
+		 */
+		private final int offset;
+
+		/**
+		 * Construct the interval.
+		 * 
+		 * @param start
+		 *            value.
+		 * @param end
+		 *            value.
+		 * @param offset
+		 *            value.
+		 */
+		OffsetInterval(long start, long end, int offset) {
+			this.start = start;
+			this.end = end;
+			this.offset = offset;
+		}
+
+		/**
+		 * @param when
+		 *            the time.
+		 * @return true if the time is within the interval.
+		 */
+		boolean contains(long when) {
+			return when >= start && when < end;
+		}
+	}
+
 }
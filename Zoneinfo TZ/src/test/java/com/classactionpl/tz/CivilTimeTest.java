@@ -0,0 +1,95 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.classactionpl.tz;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.TimeZone;
+
+import org.junit.Test;
+
+/**
+ * Test out the calendar arithmetic against the JDK's calendar.
+ * 
+ * @author huntc
+ * 
+ */
+public class CivilTimeTest {
+
+	/**
+	 * Walk a day at a time over a few centuries and compare against a UTC
+	 * calendar.
+	 */
+	@Test
+	public void testAgainstGregorianCalendar() {
+		Calendar cal = new GregorianCalendar(TimeZone.getTimeZone("GMT"));
+		cal.clear();
+		final int fromYear = 1800;
+		final int toYear = 2200;
+		cal.set(fromYear, Calendar.JANUARY, 1);
+
+		while (cal.get(Calendar.YEAR) < toYear) {
+			int year = cal.get(Calendar.YEAR);
+			int month = cal.get(Calendar.MONTH);
+			int dayOfMonth = cal.get(Calendar.DAY_OF_MONTH);
+			long epochDay = CivilTime.daysFromCivil(year, month, dayOfMonth);
+
+			assertEquals(cal.getTimeInMillis(), epochDay
+					* CivilTime.MILLIS_PER_DAY);
+			assertEquals(cal.get(Calendar.DAY_OF_WEEK), CivilTime
+					.dayOfWeek(epochDay));
+			assertEquals(year, CivilTime.yearOf(cal.getTimeInMillis()));
+			assertEquals(year, CivilTime.yearOf(cal.getTimeInMillis()
+					+ CivilTime.MILLIS_PER_DAY - 1));
+			assertEquals(cal.getActualMaximum(Calendar.DAY_OF_MONTH),
+					CivilTime.daysInMonth(year, month));
+
+			cal.add(Calendar.DAY_OF_MONTH, 1);
+		}
+	}
+
+	/**
+	 * Test finding a day of week on or before a given day.
+	 */
+	@Test
+	public void testDayOfWeekOnOrBefore() {
+		final int year = 2010;
+		final int eighth = 8;
+		long day = CivilTime.daysFromCivil(year, Calendar.MARCH, eighth);
+		final int seventh = 7;
+		assertEquals(CivilTime.daysFromCivil(year, Calendar.MARCH, seventh),
+				CivilTime.dayOfWeekOnOrBefore(day, Calendar.SUNDAY));
+		assertEquals(day, CivilTime.dayOfWeekOnOrBefore(day, Calendar.MONDAY));
+	}
+
+	/**
+	 * Test that floor division and modulus round toward negative infinity.
+	 */
+	@Test
+	public void testFloorDivMod() {
+		final int seven = 7;
+		assertEquals(-1, CivilTime.floorDiv(-1, seven));
+		assertEquals(seven - 1, CivilTime.floorMod(-1, seven));
+		assertEquals(0, CivilTime.floorDiv(seven - 1, seven));
+		assertEquals(1, CivilTime.floorMod(seven + 1, seven));
+	}
+}
@@ -0,0 +1,109 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.classactionpl.tz;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Calendar;
+
+import org.junit.Test;
+
+import com.classactionpl.tz.Rule.OnType;
+import com.classactionpl.tz.Rule.TimeOfDayType;
+import com.classactionpl.tz.Rule.YearType;
+import com.classactionpl.tz.Rule.YearValueType;
+
+/**
+ * Test out compiled rules.
+ *
+ * @author huntc
+ *
+ */
+public class CompiledRuleTest {
+
+	/**
+	 * Create a rule for the first Sunday in April at 3am wall clock time.
+	 *
+	 * @param type
+	 *            the year type.
+	 * @return the rule.
+	 */
+	private Rule createRule(YearType type) {
+		Rule rule = new Rule();
+		rule.setFromType(YearValueType.value);
+		rule.setFrom(2008);
+		rule.setToType(YearValueType.max);
+		rule.setType(type);
+		rule.setIn(Calendar.APRIL);
+		rule.setOnType(OnType.get);
+		rule.setOn(Calendar.SUNDAY);
+		rule.setOnTypeValue(1);
+		rule.setAt(3 * 60 * 60);
+		rule.setAtType(TimeOfDayType.wallclock);
+		rule.setSave(60 * 60);
+		return rule;
+	}
+
+	/**
+	 * Test that the years are resolved as per the rule.
+	 */
+	@Test
+	public void testYears() {
+		Rule rule = createRule(YearType.inclusive);
+		CompiledRule compiledRule = new CompiledRule(rule);
+
+		assertEquals(rule.resolveFrom(), compiledRule.getFromYear());
+		assertEquals(rule.resolveTo(), compiledRule.getToYear());
+	}
+
+	/**
+	 * Test that the year type predicate agrees with the rule for all types,
+	 * including negative years.
+	 */
+	@Test
+	public void testYearIsType() {
+		for (YearType type : YearType.values()) {
+			Rule rule = createRule(type);
+			CompiledRule compiledRule = new CompiledRule(rule);
+			for (int year = -9; year <= 2012; ++year) {
+				assertEquals(type + " " + year, rule.yearIsType(year),
+						compiledRule.yearIsType(year));
+			}
+		}
+	}
+
+	/**
+	 * Test that the unpacked in, on and at fields resolve to the same start as
+	 * the rule.
+	 */
+	@Test
+	public void testResolveStart() {
+		final int utcOffset = 10 * 60 * 60;
+		Rule rule = createRule(YearType.inclusive);
+		CompiledRule compiledRule = new CompiledRule(rule);
+
+		for (int year = 2008; year <= 2012; ++year) {
+			assertEquals(Rule.resolveInOnAtMillis(year, rule.getIn(), rule
+					.getOnType(), rule.getOn(), rule.getOnTypeValue(), rule
+					.getAt(), rule.getAtType(), utcOffset, rule.getSave()),
+					compiledRule.resolveStart(year, utcOffset));
+		}
+	}
+}
@@ -219,4 +219,56 @@ public class RuleTest {
 
 		assertEquals(dateFormat.parse("2010-04-01T00:00:00+0000"), resolved);
 	}
+
+	/**
+	 * Test that the primitive resolution yields the same time as the date
+	 * resolution.
+	 * 
+	 * @throws ParseException
+	 *             test is wrong.
+	 */
+	@Test
+	public void testResolveInOnAtMillis() throws ParseException {
+		final int oneHourInSeconds = 60 * 60;
+		final int year = 2010;
+		final int in = Calendar.OCTOBER;
+		final OnType onType = OnType.last;
+		final int on = Calendar.SUNDAY;
+		final int onTypeValue = 0;
+		final int at = 2 * oneHourInSeconds;
+		final TimeOfDayType atType = TimeOfDayType.wallclock;
+		final int utcOffset = 10 * oneHourInSeconds;
+		final int save = 0;
+
+		long resolved = Rule.resolveInOnAtMillis(year, in, onType, on,
+				onTypeValue, at, atType, utcOffset, save);
+
+		assertEquals(dateFormat.parse("2010-10-31T02:00:00+1000").getTime(),
+				resolved);
+		assertEquals(Rule.resolveInOnAt(year, in, onType, on, onTypeValue, at,
+				atType, utcOffset, save).getTime(), resolved);
+	}
+
+	/**
+	 * Test that days of the month roll over into the following month.
+	 * 
+	 * @throws ParseException
+	 *             test is wrong.
+	 */
+	@Test
+	public void testResolveInOnAtMillisLenient() throws ParseException {
+		final int year = 2010;
+		final int in = Calendar.APRIL;
+		final OnType onType = OnType.value;
+		final int thirtyFirst = 31;
+		final int onTypeValue = 0;
+		final int at = 0;
+		final TimeOfDayType atType = TimeOfDayType.universal;
+
+		long resolved = Rule.resolveInOnAtMillis(year, in, onType,
+				thirtyFirst, onTypeValue, at, atType, 0, 0);
+
+		assertEquals(dateFormat.parse("2010-05-01T00:00:00+0000").getTime(),
+				resolved);
+	}
 }
@@ -26,6 +26,7 @@ import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.Date;
 import java.util.List;
 
 import org.junit.Test;
@@ -93,4 +94,155 @@ public class ZoneDetailTest {
 				.parse("1999-04-04T03:00:00+1100")));
 	}
 
+	/**
+	 * Test resolving a rule and until given milliseconds since the epoch
+	 * agrees with resolving them given dates.
+	 * 
+	 * @throws ParseException
+	 *             if the test is set up wrong.
+	 */
+	@Test
+	public void testResolveMillis() throws ParseException {
+		Rule rule1 = new Rule();
+		rule1.setIn(Calendar.OCTOBER);
+		rule1.setOn(Calendar.SUNDAY);
+		rule1.setOnType(OnType.last);
+		final int twoOClockSeconds = 2 * 60 * 60;
+		rule1.setAt(twoOClockSeconds);
+		rule1.setAtType(TimeOfDayType.localStandard);
+		rule1.setFromType(YearValueType.min);
+		rule1.setToType(YearValueType.max);
+		final int oneHourSeconds = 1 * 60 * 60;
+		rule1.setSave(oneHourSeconds);
+		rule1.setType(YearType.inclusive);
+
+		List<Rule> rules = new ArrayList<Rule>();
+		rules.add(rule1);
+
+		ZoneDetail detail = new ZoneDetail();
+		detail.setRules(rules);
+		final int tenHoursSeconds = 10 * 60 * 60;
+		detail.setUtcOffset(tenHoursSeconds);
+		final int twenty10 = 2010;
+		detail.setUntil(twenty10);
+		detail.setUntilIn(Calendar.DECEMBER);
+		detail.setUntilOnType(OnType.value);
+		detail.setUntilOn(1);
+		detail.setUntilAt(0);
+		detail.setUntilAtType(TimeOfDayType.wallclock);
+
+		long when = dateFormat.parse("2010-10-31T02:00:00+1000").getTime();
+		assertEquals(rule1, detail.resolveRule(when));
+		assertEquals(rule1, detail.resolveRule(when - 1));
+		assertEquals(rule1, detail.resolveRule(new Date(when)));
+
+		long until = dateFormat.parse("2010-12-01T00:00:00+1100").getTime();
+		assertEquals(until, detail.resolveUntil(when));
+		assertEquals(until, detail.resolveUntil(new Date(when)).getTime());
+
+		detail.setUntil(null);
+		assertEquals(Long.MAX_VALUE, detail.resolveUntil(when));
+	}
+
+	/**
+	 * Test that rules resolve consistently when revisiting years that have
+	 * been resolved before, and that changing the offset is reflected.
+	 * 
+	 * @throws ParseException
+	 *             if the test is set up wrong.
+	 */
+	@Test
+	public void testResolveRuleRevisitingYears() throws ParseException {
+		Rule ruleOutDST = new Rule();
+		ruleOutDST.setIn(Calendar.APRIL);
+		ruleOutDST.setOn(Calendar.SUNDAY);
+		ruleOutDST.setOnType(OnType.get);
+		ruleOutDST.setOnTypeValue(1);
+		final int twoOClockSeconds = 2 * 60 * 60;
+		ruleOutDST.setAt(twoOClockSeconds);
+		ruleOutDST.setAtType(TimeOfDayType.universal);
+		ruleOutDST.setFromType(YearValueType.min);
+		ruleOutDST.setToType(YearValueType.max);
+		ruleOutDST.setSave(0);
+		ruleOutDST.setType(YearType.inclusive);
+
+		Rule ruleInDST = new Rule();
+		ruleInDST.setIn(Calendar.OCTOBER);
+		ruleInDST.setOn(Calendar.SUNDAY);
+		ruleInDST.setOnType(OnType.get);
+		ruleInDST.setOnTypeValue(1);
+		ruleInDST.setAt(twoOClockSeconds);
+		ruleInDST.setAtType(TimeOfDayType.localStandard);
+		ruleInDST.setFromType(YearValueType.min);
+		ruleInDST.setToType(YearValueType.max);
+		final int oneHourSeconds = 1 * 60 * 60;
+		ruleInDST.setSave(oneHourSeconds);
+		ruleInDST.setType(YearType.inclusive);
+
+		List<Rule> rules = new ArrayList<Rule>();
+		rules.add(ruleOutDST);
+		rules.add(ruleInDST);
+
+		ZoneDetail detail = new ZoneDetail();
+		detail.setRules(rules);
+
+		final int fromYear = 1970;
+		final int toYear = 2030;
+		final int passes = 2;
+		for (int pass = 0; pass < passes; ++pass) {
+			for (int year = fromYear; year <= toYear; ++year) {
+				long july = dateFormat.parse(year + "-07-01T00:00:00+0000")
+						.getTime();
+				assertEquals(ruleOutDST, detail.resolveRule(july));
+				long december = dateFormat.parse(
+						year + "-12-01T00:00:00+0000").getTime();
+				assertEquals(ruleInDST, detail.resolveRule(december));
+			}
+		}
+
+		// 2010-10-03T02:00 standard time is now an hour later in UTC.
+		long dstStarts = dateFormat.parse("2010-10-03T02:00:00+0000")
+				.getTime();
+		assertEquals(ruleInDST, detail.resolveRule(dstStarts));
+		final int minusOneHourSeconds = -oneHourSeconds;
+		detail.setUtcOffset(minusOneHourSeconds);
+		assertEquals(ruleOutDST, detail.resolveRule(dstStarts));
+	}
+
+	/**
+	 * Test finding the standard or daylight rule adjacent to a rule.
+	 */
+	@Test
+	public void testResolveAdjacentRule() {
+		final int oneHourSeconds = 1 * 60 * 60;
+		Rule standard1 = new Rule();
+		standard1.setSave(0);
+		Rule daylight1 = new Rule();
+		daylight1.setSave(oneHourSeconds);
+		Rule standard2 = new Rule();
+		standard2.setSave(0);
+		Rule daylight2 = new Rule();
+		daylight2.setSave(oneHourSeconds);
+
+		List<Rule> rules = new ArrayList<Rule>();
+		rules.add(standard1);
+		rules.add(daylight1);
+		rules.add(standard2);
+		rules.add(daylight2);
+
+		ZoneDetail detail = new ZoneDetail();
+		detail.setRules(rules);
+
+		// Matching rules are returned as is.
+		assertEquals(standard1, detail.resolveRule(standard1, false));
+		assertEquals(daylight2, detail.resolveRule(daylight2, true));
+
+		// Otherwise the following rule is preferred over the preceding one.
+		assertEquals(daylight1, detail.resolveRule(standard1, true));
+		assertEquals(standard2, detail.resolveRule(daylight1, false));
+		assertEquals(daylight2, detail.resolveRule(standard2, true));
+		assertEquals(standard2, detail.resolveRule(daylight2, false));
+
+		assertNull(detail.resolveRule(null, true));
+	}
 }
@@ -20,10 +20,15 @@
 package com.classactionpl.tz;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.HashMap;
 import java.util.List;
@@ -44,6 +49,14 @@ import com.classactionpl.tz.Rule.YearValueType;
  */
 public class ZoneFactoryTest {
 
+	/**
+	 * The zoneinfo documents available to test with, in the order that they
+	 * are to be parsed.
+	 */
+	private static final String[] CORPUS = { "africa", "antarctica", "asia",
+			"australasia", "europe", "northamerica", "pacificnew", "solar87",
+			"solar88", "solar89", "southamerica", "backward" };
+
 	/**
 	 * A date formatter to faciliate setting up and verifying tests.
 	 */
@@ -241,6 +254,96 @@ public class ZoneFactoryTest {
 		checkRulesForEU(rules);
 	}
 
+	/**
+	 * Verify that two sets of zones have the same details and rules.
+	 * 
+	 * @param expectedZones
+	 *            the zones expected.
+	 * @param zones
+	 *            the zones to verify.
+	 */
+	private void checkSameZones(Map<String, AbstractZone> expectedZones,
+			Map<String, AbstractZone> zones) {
+		assertEquals(expectedZones.keySet(), zones.keySet());
+		for (AbstractZone expectedZone : expectedZones.values()) {
+			String name = expectedZone.getName();
+			AbstractZone zone = zones.get(name);
+			assertEquals(name, expectedZone.getClass(), zone.getClass());
+			assertEquals(name, expectedZone.getCanonicalZone().getName(), zone
+					.getCanonicalZone().getName());
+
+			List<ZoneDetail> expectedDetails = new ArrayList<ZoneDetail>(
+					expectedZone.getDetails());
+			List<ZoneDetail> details = new ArrayList<ZoneDetail>(zone
+					.getDetails());
+			assertEquals(name, expectedDetails.size(), details.size());
+			for (int i = 0; i < details.size(); ++i) {
+				ZoneDetail expected = expectedDetails.get(i);
+				ZoneDetail detail = details.get(i);
+				assertEquals(name, expected.getUtcOffset(), detail
+						.getUtcOffset());
+				assertEquals(name, expected.getSave(), detail.getSave());
+				assertEquals(name, expected.getFormat(), detail.getFormat());
+				assertEquals(name, expected.getDstFormat(), detail
+						.getDstFormat());
+				assertEquals(name, expected.getUntil(), detail.getUntil());
+				assertEquals(name, expected.getUntilIn(), detail.getUntilIn());
+				assertEquals(name, expected.getUntilOn(), detail.getUntilOn());
+				assertEquals(name, expected.getUntilOnType(), detail
+						.getUntilOnType());
+				assertEquals(name, expected.getUntilOnTypeValue(), detail
+						.getUntilOnTypeValue());
+				assertEquals(name, expected.getUntilAt(), detail.getUntilAt());
+				assertEquals(name, expected.getUntilAtType(), detail
+						.getUntilAtType());
+				checkSameRules(name, expected.getRules(), detail.getRules());
+			}
+
+			assertEquals(name, expectedZone.getTransitions().getFingerprint(),
+					zone.getTransitions().getFingerprint());
+		}
+	}
+
+	/**
+	 * Verify that two lists of rules are the same.
+	 * 
+	 * @param name
+	 *            the name of the zone that the rules are for.
+	 * @param expectedRules
+	 *            the rules expected or null.
+	 * @param rules
+	 *            the rules to verify or null.
+	 */
+	private void checkSameRules(String name, List<Rule> expectedRules,
+			List<Rule> rules) {
+		if (expectedRules == null) {
+			assertNull(name, rules);
+		} else {
+			assertEquals(name, expectedRules.size(), rules.size());
+			for (int i = 0; i < rules.size(); ++i) {
+				Rule expected = expectedRules.get(i);
+				Rule rule = rules.get(i);
+				assertEquals(name, expected.getName(), rule.getName());
+				assertEquals(name, expected.getFrom(), rule.getFrom());
+				assertEquals(name, expected.getFromType(), rule.getFromType());
+				assertEquals(name, expected.getTo(), rule.getTo());
+				assertEquals(name, expected.getToType(), rule.getToType());
+				assertEquals(name, expected.isToTypeOnly(), rule
+						.isToTypeOnly());
+				assertEquals(name, expected.getType(), rule.getType());
+				assertEquals(name, expected.getIn(), rule.getIn());
+				assertEquals(name, expected.getOn(), rule.getOn());
+				assertEquals(name, expected.getOnType(), rule.getOnType());
+				assertEquals(name, expected.getOnTypeValue(), rule
+						.getOnTypeValue());
+				assertEquals(name, expected.getAt(), rule.getAt());
+				assertEquals(name, expected.getAtType(), rule.getAtType());
+				assertEquals(name, expected.getSave(), rule.getSave());
+				assertEquals(name, expected.getLetters(), rule.getLetters());
+			}
+		}
+	}
+
 	/**
 	 * Test parsing the European zoneinfo file and verify that Europe/London is
 	 * as per its rules etc.
@@ -282,6 +385,183 @@ public class ZoneFactoryTest {
 
 		assertEquals(0, zone.resolveUtcOffset(dateFormat
 				.parse("2010-10-31T01:00:00+0000")));
+
+		// Dublin's third detail fixes its save at 1:00 rather than naming
+		// rules.
+		ZoneDetail dublinDetail = ((Zone) zones.get("Europe/Dublin"))
+				.getDetails().get(2);
+		assertNull(dublinDetail.getRules());
+		assertEquals(oneHourInSeconds, dublinDetail.getSave());
+	}
+
+	/**
+	 * Test parsing the European zoneinfo file a record at a time.
+	 */
+	@Test
+	public void testParseStreamingEurope() {
+		ZoneFactory factory = new ZoneFactory();
+		Map<String, AbstractZone> zones = new HashMap<String, AbstractZone>();
+		factory.parseStreaming(ZoneFactoryTest.class
+				.getResourceAsStream("europe"), zones);
+
+		Zone zone = (Zone) zones.get("Europe/London");
+		List<ZoneDetail> zoneDetails = zone.getDetails();
+		final int expectedZoneDetails = 5;
+		assertEquals(zoneDetails.size(), expectedZoneDetails);
+
+		checkZoneDetailsForLondon(zoneDetails);
+
+		Link link = (Link) zones.get("Europe/Jersey");
+		assertEquals(zone, link.getTargetZone());
+	}
+
+	/**
+	 * Test that parsing a record at a time produces the same zones as parsing
+	 * entire documents.
+	 */
+	@Test
+	public void testParseStreamingCorpus() {
+		ZoneFactory factory = new ZoneFactory();
+		Map<String, AbstractZone> zones = new HashMap<String, AbstractZone>();
+		Map<String, AbstractZone> streamedZones = new HashMap<String, AbstractZone>();
+		for (String name : CORPUS) {
+			factory.parse(ZoneFactoryTest.class.getResourceAsStream(name),
+					zones);
+			factory.parseStreaming(ZoneFactoryTest.class
+					.getResourceAsStream(name), streamedZones);
+		}
+
+		checkSameZones(zones, streamedZones);
+	}
+
+	/**
+	 * Test parsing the European zoneinfo file in a single pass.
+	 */
+	@Test
+	public void testParseSinglePassEurope() {
+		ZoneFactory factory = new ZoneFactory();
+		Map<String, AbstractZone> zones = new HashMap<String, AbstractZone>();
+		factory.parseSinglePass(ZoneFactoryTest.class
+				.getResourceAsStream("europe"), zones);
+
+		Zone zone = (Zone) zones.get("Europe/London");
+		List<ZoneDetail> zoneDetails = zone.getDetails();
+		final int expectedZoneDetails = 5;
+		assertEquals(zoneDetails.size(), expectedZoneDetails);
+
+		checkZoneDetailsForLondon(zoneDetails);
+
+		Link link = (Link) zones.get("Europe/Jersey");
+		assertEquals(zone, link.getTargetZone());
+	}
+
+	/**
+	 * Test that parsing in a single pass produces the same zones as the
+	 * grammar.
+	 */
+	@Test
+	public void testParseSinglePassCorpus() {
+		ZoneFactory factory = new ZoneFactory();
+		Map<String, AbstractZone> zones = new HashMap<String, AbstractZone>();
+		Map<String, AbstractZone> singlePassZones = new HashMap<String, AbstractZone>();
+		for (String name : CORPUS) {
+			factory.parse(ZoneFactoryTest.class.getResourceAsStream(name),
+					zones);
+			factory.parseSinglePass(ZoneFactoryTest.class
+					.getResourceAsStream(name), singlePassZones);
+		}
+
+		checkSameZones(zones, singlePassZones);
+	}
+
+	/**
+	 * Test that parsing the corpus with its links first produces the same
+	 * zones as parsing it with its links last.
+	 */
+	@Test
+	public void testParseAnyOrder() {
+		ZoneFactory factory = new ZoneFactory();
+		Map<String, AbstractZone> zones = new HashMap<String, AbstractZone>();
+		List<InputStream> reversedStreams = new ArrayList<InputStream>();
+		for (String name : CORPUS) {
+			factory.parse(ZoneFactoryTest.class.getResourceAsStream(name),
+					zones);
+			reversedStreams.add(0, ZoneFactoryTest.class
+					.getResourceAsStream(name));
+		}
+
+		Map<String, AbstractZone> reversedZones = new HashMap<String, AbstractZone>();
+		factory.parse(reversedStreams, reversedZones);
+
+		checkSameZones(zones, reversedZones);
+		assertEquals(reversedZones.get("America/New_York"), reversedZones.get(
+				"US/Eastern").getCanonicalZone());
+	}
+
+	/**
+	 * Test that loading into a registry that already publishes the zones
+	 * loaded replaces them rather than changing them.
+	 * 
+	 * @throws ParseException
+	 *             if the test is not set up correctly.
+	 */
+	@Test
+	public void testLoadTwice() throws ParseException {
+		ZoneFactory factory = new ZoneFactory();
+		ZoneRegistry registry = new ZoneRegistry();
+		factory.load(registry, ZoneFactoryTest.class
+				.getResourceAsStream("europe"));
+
+		ZoneinfoTimeZone tz = registry.getTimeZone("Europe/London");
+		long when = dateFormat.parse("2010-07-01T00:00:00+0000").getTime();
+		final int oneHourInMillis = 1 * 60 * 60 * 1000;
+		assertEquals(oneHourInMillis, tz.getOffset(when));
+		Zone london = (Zone) registry.getZones().get("Europe/London");
+		ZoneTransitions transitions = london.getTransitions();
+
+		factory.load(registry, ZoneFactoryTest.class
+				.getResourceAsStream("europe"));
+
+		final int expectedZoneDetails = 5;
+		assertEquals(expectedZoneDetails, london.getDetails().size());
+		assertSame(transitions, london.getTransitions());
+		assertEquals(oneHourInMillis, tz.getOffset(when));
+
+		Zone reloadedLondon = (Zone) registry.getZones().get("Europe/London");
+		assertNotSame(london, reloadedLondon);
+		assertEquals(expectedZoneDetails, reloadedLondon.getDetails().size());
+		assertSame(reloadedLondon, registry.getZones().get("Europe/Jersey")
+				.getCanonicalZone());
 	}
 
+	/**
+	 * Test that links loaded from another document follow the zone that they
+	 * link to when it is reloaded, and that links to zones no longer held are
+	 * dropped.
+	 */
+	@Test
+	public void testLoadRetargetsLinks() {
+		ZoneFactory factory = new ZoneFactory();
+		ZoneRegistry registry = new ZoneRegistry();
+		factory.load(registry, new ByteArrayInputStream(
+				"Zone\tFoo/Bar\t1:00\t-\tFOO\n".getBytes()),
+				new ByteArrayInputStream("Link\tFoo/Bar\tBaz\n".getBytes()));
+		final int oneHourInMillis = 1 * 60 * 60 * 1000;
+		assertEquals(oneHourInMillis, registry.getTimeZone("Baz").getOffset(0));
+
+		factory.load(registry, new ByteArrayInputStream(
+				"Zone\tFoo/Bar\t2:00\t-\tFOO\n".getBytes()));
+		AbstractZone fooBar = registry.getZones().get("Foo/Bar");
+		assertEquals(2 * oneHourInMillis, registry.getTimeZone("Foo/Bar")
+				.getOffset(0));
+		assertEquals(2 * oneHourInMillis, registry.getTimeZone("Baz")
+				.getOffset(0));
+		assertSame(fooBar, registry.getZones().get("Baz").getCanonicalZone());
+
+		Map<String, AbstractZone> zones = new HashMap<String, AbstractZone>(
+				registry.getZones());
+		zones.remove("Foo/Bar");
+		ZoneinfoLinker.retargetLinks(zones);
+		assertNull(zones.get("Baz"));
+	}
 }
@@ -0,0 +1,135 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.classactionpl.tz;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.classactionpl.tz.Rule.OnType;
+import com.classactionpl.tz.Rule.TimeOfDayType;
+import com.classactionpl.tz.Rule.YearType;
+import com.classactionpl.tz.Rule.YearValueType;
+
+/**
+ * Test out the sharing of zone data.
+ *
+ * @author huntc
+ *
+ */
+public class ZoneInternerTest {
+
+	/**
+	 * Create a set of zones as if freshly parsed, with their own copies of
+	 * everything.
+	 *
+	 * @return the zones keyed by id.
+	 */
+	private Map<String, AbstractZone> createZones() {
+		final int oneHourInSeconds = 60 * 60;
+
+		List<Rule> rules = new ArrayList<Rule>();
+		for (int save = 0; save <= oneHourInSeconds; save += oneHourInSeconds) {
+			Rule rule = new Rule();
+			rule.setName(new String("AN"));
+			rule.setFrom(2008);
+			rule.setFromType(YearValueType.value);
+			rule.setToType(YearValueType.max);
+			rule.setType(YearType.inclusive);
+			rule.setIn(save == 0 ? Calendar.APRIL : Calendar.OCTOBER);
+			rule.setOn(Calendar.SUNDAY);
+			rule.setOnType(OnType.get);
+			rule.setOnTypeValue(1);
+			rule.setAt(2 * oneHourInSeconds);
+			rule.setAtType(TimeOfDayType.localStandard);
+			rule.setSave(save);
+			rule.setLetters(new String(save == 0 ? "S" : "D"));
+			rules.add(rule);
+		}
+
+		Map<String, AbstractZone> zones = new HashMap<String, AbstractZone>();
+		for (String id : new String[] { "Australia/Sydney",
+				"Australia/Melbourne" }) {
+			Zone zone = new Zone();
+			zone.setName(id);
+
+			ZoneDetail detail = new ZoneDetail();
+			detail.setUtcOffset(10 * oneHourInSeconds);
+			detail.setRules(rules);
+			detail.setFormat(new String("EST"));
+			detail.setUntil(1971);
+			zone.getDetails().add(detail);
+
+			detail = new ZoneDetail();
+			detail.setUtcOffset(10 * oneHourInSeconds);
+			detail.setRules(rules);
+			detail.setFormat(new String("EST"));
+			zone.getDetails().add(detail);
+
+			zones.put(id, zone);
+		}
+		return zones;
+	}
+
+	/**
+	 * Test that identical details and rules are shared within and between
+	 * sets of zones, without changing what the zones resolve to.
+	 */
+	@Test
+	public void testIntern() {
+		Map<String, AbstractZone> zones = createZones();
+		Map<String, AbstractZone> otherZones = createZones();
+		AbstractZone sydney = zones.get("Australia/Sydney");
+		final long when = 1262304000000L; // 2010-01-01T00:00:00Z
+		int utcOffset = sydney.resolveUtcOffset(when);
+
+		ZoneInterner interner = new ZoneInterner();
+		ZoneInterner.Report report = interner.intern(zones);
+		assertEquals(2, report.getSharedDetails());
+		assertTrue(report.getBytesSaved() > 0);
+
+		report = interner.intern(otherZones);
+		assertEquals(4, report.getSharedDetails());
+		assertEquals(2, report.getSharedRules());
+		assertEquals(1, report.getSharedRuleLists());
+
+		AbstractZone melbourne = otherZones.get("Australia/Melbourne");
+		List<ZoneDetail> sydneyDetails = ((Zone) sydney).getDetails();
+		List<ZoneDetail> melbourneDetails = ((Zone) melbourne).getDetails();
+		assertSame(sydneyDetails.get(0), melbourneDetails.get(0));
+		assertSame(sydneyDetails.get(1), melbourneDetails.get(1));
+		assertNotSame(sydneyDetails.get(0), sydneyDetails.get(1));
+		assertSame(sydneyDetails.get(0).getRules(), sydneyDetails.get(1)
+				.getRules());
+		assertSame("EST", sydneyDetails.get(0).getFormat());
+
+		assertEquals(utcOffset, sydney.resolveUtcOffset(when));
+		assertEquals(utcOffset, melbourne.resolveUtcOffset(when));
+	}
+}
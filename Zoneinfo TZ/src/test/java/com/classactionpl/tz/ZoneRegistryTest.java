@@ -0,0 +1,119 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.classactionpl.tz;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+/**
+ * Test out holding several sets of zones at once.
+ *
+ * @author huntc
+ *
+ */
+public class ZoneRegistryTest {
+
+	/** */
+	private static final int ONE_HOUR_IN_SECONDS = 60 * 60;
+
+	/**
+	 * Create a set of zones with a fixed offset.
+	 *
+	 * @param utcOffset
+	 *            the offset of each zone in seconds.
+	 * @param ids
+	 *            the ids of the zones.
+	 * @return the zones keyed by id.
+	 */
+	private Map<String, AbstractZone> createZones(int utcOffset,
+			String... ids) {
+		Map<String, AbstractZone> zones = new HashMap<String, AbstractZone>();
+		for (String id : ids) {
+			Zone zone = new Zone();
+			zone.setName(id);
+			ZoneDetail detail = new ZoneDetail();
+			detail.setUtcOffset(utcOffset);
+			detail.setFormat("TST");
+			zone.getDetails().add(detail);
+			zones.put(id, zone);
+		}
+		return zones;
+	}
+
+	/**
+	 * Test that registries resolve the same ids against their own zones.
+	 */
+	@Test
+	public void testIsolation() {
+		ZoneRegistry registry = new ZoneRegistry(createZones(
+				ONE_HOUR_IN_SECONDS, "Test/A", "Test/B"));
+		ZoneRegistry otherRegistry = new ZoneRegistry(createZones(
+				2 * ONE_HOUR_IN_SECONDS, "Test/A"));
+
+		assertArrayEquals(new String[] { "Test/A", "Test/B" }, registry
+				.getAvailableIDs());
+		assertArrayEquals(new String[] { "Test/A" }, otherRegistry
+				.getAvailableIDs());
+		assertTrue(registry.getAvailableIDsVersion() != otherRegistry
+				.getAvailableIDsVersion());
+
+		ZoneinfoTimeZone tz = registry.getTimeZone("Test/A");
+		ZoneinfoTimeZone otherTz = otherRegistry.getTimeZone("Test/A");
+		assertNotSame(tz, otherTz);
+		assertSame(registry, tz.getRegistry());
+		assertSame(otherRegistry, otherTz.getRegistry());
+		assertEquals(ONE_HOUR_IN_SECONDS * 1000, tz.getOffset(0L));
+		assertEquals(2 * ONE_HOUR_IN_SECONDS * 1000, otherTz.getOffset(0L));
+
+		assertArrayEquals(new String[] { "Test/A", "Test/B" }, registry
+				.getAvailableIDs(ONE_HOUR_IN_SECONDS * 1000));
+		assertArrayEquals(new String[0], otherRegistry
+				.getAvailableIDs(ONE_HOUR_IN_SECONDS * 1000));
+
+		// Neither registry is the default one.
+		assertEquals(null, ZoneRegistry.getDefault().getZones().get("Test/B"));
+		assertEquals(null, ZoneinfoTimeZone.getTimeZone("Test/B"));
+	}
+
+	/**
+	 * Test that a clone stays bound to the registry of the time zone cloned
+	 * until it is associated with another zone.
+	 */
+	@Test
+	public void testCloneRegistry() {
+		ZoneRegistry registry = new ZoneRegistry(createZones(
+				ONE_HOUR_IN_SECONDS, "Test/A", "Test/B"));
+		ZoneinfoTimeZone tz = registry.getTimeZone("Test/A");
+
+		ZoneinfoTimeZone clonedTz = (ZoneinfoTimeZone) tz.clone();
+		assertSame(registry, clonedTz.getRegistry());
+
+		clonedTz.setZone(registry.getZones().get("Test/B"));
+		assertEquals(null, clonedTz.getRegistry());
+	}
+}
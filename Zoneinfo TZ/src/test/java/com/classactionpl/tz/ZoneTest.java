@@ -20,6 +20,8 @@
 package com.classactionpl.tz;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
 
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
@@ -31,6 +33,7 @@ import java.util.List;
 
 import org.junit.Test;
 
+import com.classactionpl.tz.AbstractZone.LocalTimePolicy;
 import com.classactionpl.tz.Rule.OnType;
 import com.classactionpl.tz.Rule.TimeOfDayType;
 import com.classactionpl.tz.Rule.YearType;
@@ -217,4 +220,192 @@ public class ZoneTest {
 		assertEquals(elevenHoursInSeconds, zone.resolveUtcOffset(dateFormat
 				.parse("2010-10-02T16:00:00+0000")));
 	}
+
+	/**
+	 * Test that details and offsets resolve the same given milliseconds since
+	 * the epoch as they do given dates, and that a link resolves as per its
+	 * target.
+	 * 
+	 * @throws ParseException
+	 *             if the test is incorrectly set up.
+	 */
+	@Test
+	public void testResolveMillis() throws ParseException {
+		ZoneDetail detail1 = new ZoneDetail();
+		final int nineHoursInSeconds = 9 * 60 * 60;
+		detail1.setUtcOffset(nineHoursInSeconds);
+		final int twenty10 = 2010;
+		detail1.setUntil(twenty10);
+
+		ZoneDetail detail2 = new ZoneDetail();
+		final int tenHoursInSeconds = 10 * 60 * 60;
+		detail2.setUtcOffset(tenHoursInSeconds);
+
+		Zone zone = new Zone();
+		zone.getDetails().add(detail1);
+		zone.getDetails().add(detail2);
+
+		Link link = new Link();
+		link.setTargetZone(zone);
+
+		long until = dateFormat.parse("2010-01-01T00:00:00+0000").getTime();
+		assertEquals(detail1, zone.resolveDetail(until - 1));
+		assertEquals(detail2, zone.resolveDetail(until));
+		assertEquals(detail2, zone.resolveDetail(new Date(until)));
+		assertEquals(detail2, link.resolveDetail(until));
+
+		assertEquals(nineHoursInSeconds, zone.resolveUtcOffset(until - 1));
+		assertEquals(tenHoursInSeconds, zone.resolveUtcOffset(until));
+		assertEquals(tenHoursInSeconds, link.resolveUtcOffset(new Date(until)));
+	}
+
+	/**
+	 * Test that each of many details is resolved from its predecessor's until
+	 * up to but excluding its own.
+	 * 
+	 * @throws ParseException
+	 *             if the test is incorrectly set up.
+	 */
+	@Test
+	public void testResolveDetailAtUntils() throws ParseException {
+		Zone zone = new Zone();
+		final int fromYear = 2001;
+		final int toYear = 2009;
+		for (int year = fromYear; year <= toYear; ++year) {
+			ZoneDetail detail = new ZoneDetail();
+			detail.setUntil(year);
+			zone.getDetails().add(detail);
+		}
+		ZoneDetail lastDetail = new ZoneDetail();
+		zone.getDetails().add(lastDetail);
+
+		List<ZoneDetail> details = zone.getDetails();
+		assertEquals(details.get(0), zone.resolveDetail(Long.MIN_VALUE));
+		for (int year = fromYear; year <= toYear; ++year) {
+			long until = dateFormat.parse(year + "-01-01T00:00:00+0000")
+					.getTime();
+			int index = year - fromYear;
+			assertEquals(until, details.get(index).resolveUntil());
+			assertEquals(details.get(index), zone.resolveDetail(until - 1));
+			assertEquals(details.get(index + 1), zone.resolveDetail(until));
+		}
+		assertEquals(lastDetail, zone.resolveDetail(Long.MAX_VALUE));
+	}
+
+	/**
+	 * Test resolving local times, including those repeated as DST ends and
+	 * those skipped as it starts.
+	 * 
+	 * @throws ParseException
+	 *             if the test is incorrectly set up.
+	 */
+	@Test
+	public void testResolveInstant() throws ParseException {
+		Rule ruleOutDST = new Rule();
+		final int ruleStartYear = 2008;
+		ruleOutDST.setFrom(ruleStartYear);
+		ruleOutDST.setFromType(YearValueType.value);
+		ruleOutDST.setToType(YearValueType.max);
+		ruleOutDST.setType(YearType.inclusive);
+		ruleOutDST.setIn(Calendar.APRIL);
+		ruleOutDST.setOn(Calendar.SUNDAY);
+		ruleOutDST.setOnType(OnType.get);
+		ruleOutDST.setOnTypeValue(1);
+		final int twoAMInSeconds = 2 * 60 * 60;
+		ruleOutDST.setAt(twoAMInSeconds);
+		ruleOutDST.setAtType(TimeOfDayType.localStandard);
+		ruleOutDST.setSave(0);
+
+		Rule ruleInDST = new Rule();
+		ruleInDST.setFrom(ruleStartYear);
+		ruleInDST.setFromType(YearValueType.value);
+		ruleInDST.setToType(YearValueType.max);
+		ruleInDST.setType(YearType.inclusive);
+		ruleInDST.setIn(Calendar.OCTOBER);
+		ruleInDST.setOn(Calendar.SUNDAY);
+		ruleInDST.setOnType(OnType.get);
+		ruleInDST.setOnTypeValue(1);
+		ruleInDST.setAt(twoAMInSeconds);
+		ruleInDST.setAtType(TimeOfDayType.localStandard);
+		final int oneHourInSeconds = 1 * 60 * 60;
+		ruleInDST.setSave(oneHourInSeconds);
+
+		List<Rule> rules = new ArrayList<Rule>();
+		rules.add(ruleOutDST);
+		rules.add(ruleInDST);
+
+		ZoneDetail detail = new ZoneDetail();
+		detail.setRules(rules);
+		final int tenHoursInSeconds = 10 * 60 * 60;
+		detail.setUtcOffset(tenHoursInSeconds);
+
+		Zone zone = new Zone();
+		zone.getDetails().add(detail);
+
+		// Local times are expressed as if they were UTC.
+		long local = dateFormat.parse("2010-07-01T12:00:00+0000").getTime();
+		long expected = dateFormat.parse("2010-07-01T12:00:00+1000")
+				.getTime();
+		assertEquals(expected, zone.resolveInstant(local,
+				LocalTimePolicy.earlier));
+		assertEquals(expected, zone.resolveInstant(local,
+				LocalTimePolicy.later));
+		assertEquals(expected, zone.resolveInstant(local,
+				LocalTimePolicy.reject));
+
+		// 2:30am occurs twice as DST ends.
+		local = dateFormat.parse("2010-04-04T02:30:00+0000").getTime();
+		assertEquals(dateFormat.parse("2010-04-04T02:30:00+1100").getTime(),
+				zone.resolveInstant(local, LocalTimePolicy.earlier));
+		assertEquals(dateFormat.parse("2010-04-04T02:30:00+1000").getTime(),
+				zone.resolveInstant(local, LocalTimePolicy.later));
+		try {
+			zone.resolveInstant(local, LocalTimePolicy.reject);
+			fail("A repeated local time should be rejected.");
+		} catch (IllegalArgumentException e) {
+			// Expected.
+		}
+
+		// 2:30am never occurs as DST starts.
+		local = dateFormat.parse("2010-10-03T02:30:00+0000").getTime();
+		assertEquals(dateFormat.parse("2010-10-03T02:30:00+1100").getTime(),
+				zone.resolveInstant(local, LocalTimePolicy.earlier));
+		assertEquals(dateFormat.parse("2010-10-03T02:30:00+1000").getTime(),
+				zone.resolveInstant(local, LocalTimePolicy.later));
+		try {
+			zone.resolveInstant(local, LocalTimePolicy.reject);
+			fail("A skipped local time should be rejected.");
+		} catch (IllegalArgumentException e) {
+			// Expected.
+		}
+
+		// Beyond the compiled transitions.
+		local = dateFormat.parse("2150-04-05T02:30:00+0000").getTime();
+		assertEquals(dateFormat.parse("2150-04-05T02:30:00+1100").getTime(),
+				zone.resolveInstant(local, LocalTimePolicy.earlier));
+		assertEquals(dateFormat.parse("2150-04-05T02:30:00+1000").getTime(),
+				zone.resolveInstant(local, LocalTimePolicy.later));
+	}
+
+	/**
+	 * Test that a link to a link refers to the zone ultimately linked to.
+	 */
+	@Test
+	public void testLinkChain() {
+		Zone zone = new Zone();
+		zone.setName("America/New_York");
+
+		Link link = new Link();
+		link.setName("US/Eastern");
+		link.setTargetZone(zone);
+
+		Link linkToLink = new Link();
+		linkToLink.setName("EST5EDT");
+		linkToLink.setTargetZone(link);
+
+		assertSame(zone, zone.getCanonicalZone());
+		assertSame(zone, link.getCanonicalZone());
+		assertSame(zone, linkToLink.getTargetZone());
+		assertSame(zone, linkToLink.getCanonicalZone());
+	}
 }
@@ -0,0 +1,227 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.classactionpl.tz;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.classactionpl.tz.Rule.OnType;
+import com.classactionpl.tz.Rule.TimeOfDayType;
+import com.classactionpl.tz.Rule.YearType;
+import com.classactionpl.tz.Rule.YearValueType;
+
+/**
+ * Test out the compiled form of zones.
+ *
+ * @author huntc
+ *
+ */
+public class ZoneTransitionsTest {
+
+	/**
+	 * A date formatter to faciliate setting up and verifying tests.
+	 */
+	private final SimpleDateFormat dateFormat = new SimpleDateFormat(
+			"yyyy-MM-dd'T'HH:mm:ssZ");
+
+	/**
+	 * Test that a zone with rules continuing forever compiles into
+	 * transitions up until the horizon.
+	 *
+	 * @throws ParseException
+	 *             if the test is incorrectly set up.
+	 */
+	@Test
+	public void testCompileWithRules() throws ParseException {
+		Rule ruleOutDST = new Rule();
+		final int ruleStartYear = 2008;
+		ruleOutDST.setFrom(ruleStartYear);
+		ruleOutDST.setFromType(YearValueType.value);
+		ruleOutDST.setToType(YearValueType.max);
+		ruleOutDST.setType(YearType.inclusive);
+		ruleOutDST.setIn(Calendar.APRIL);
+		ruleOutDST.setOn(Calendar.SUNDAY);
+		ruleOutDST.setOnType(OnType.get);
+		ruleOutDST.setOnTypeValue(1);
+		final int twoAMInSeconds = 2 * 60 * 60;
+		ruleOutDST.setAt(twoAMInSeconds);
+		ruleOutDST.setAtType(TimeOfDayType.localStandard);
+		ruleOutDST.setSave(0);
+
+		Rule ruleInDST = new Rule();
+		ruleInDST.setFrom(ruleStartYear);
+		ruleInDST.setFromType(YearValueType.value);
+		ruleInDST.setToType(YearValueType.max);
+		ruleInDST.setType(YearType.inclusive);
+		ruleInDST.setIn(Calendar.OCTOBER);
+		ruleInDST.setOn(Calendar.SUNDAY);
+		ruleInDST.setOnType(OnType.get);
+		ruleInDST.setOnTypeValue(1);
+		ruleInDST.setAt(twoAMInSeconds);
+		ruleInDST.setAtType(TimeOfDayType.localStandard);
+		final int oneHourInSeconds = 1 * 60 * 60;
+		ruleInDST.setSave(oneHourInSeconds);
+
+		List<Rule> rules = new ArrayList<Rule>();
+		rules.add(ruleOutDST);
+		rules.add(ruleInDST);
+
+		ZoneDetail detail = new ZoneDetail();
+		detail.setRules(rules);
+		final int tenHoursInSeconds = 10 * 60 * 60;
+		detail.setUtcOffset(tenHoursInSeconds);
+
+		Zone zone = new Zone();
+		zone.getDetails().add(detail);
+
+		ZoneTransitions transitions = zone.getTransitions();
+		assertEquals(Long.MIN_VALUE, transitions.getTransition(0));
+		assertEquals(tenHoursInSeconds, transitions.getUtcOffset(0));
+
+		long dstEnds = dateFormat.parse("2010-04-03T16:00:00+0000").getTime();
+		int index = transitions.indexOf(dstEnds);
+		assertEquals(dstEnds, transitions.getTransition(index));
+		assertEquals(tenHoursInSeconds, transitions.getUtcOffset(index));
+		assertEquals(0, transitions.getSave(index));
+		assertEquals(ruleOutDST, transitions.getRule(index));
+		assertEquals(detail, transitions.getDetail(index));
+
+		assertEquals(index - 1, transitions.indexOf(dstEnds - 1));
+		final int elevenHoursInSeconds = 11 * 60 * 60;
+		assertEquals(elevenHoursInSeconds, transitions
+				.getUtcOffset(index - 1));
+		assertEquals(oneHourInSeconds, transitions.getSave(index - 1));
+
+		long horizon = dateFormat.parse("2101-01-01T00:00:00+0000").getTime();
+		assertEquals(horizon, transitions.getHorizon());
+		assertTrue(transitions.covers(horizon - 1));
+		assertFalse(transitions.covers(horizon));
+
+		// Beyond the horizon the offset is resolved from the rules.
+		assertEquals(elevenHoursInSeconds, zone.resolveUtcOffset(dateFormat
+				.parse("2150-01-01T00:00:00+0000")));
+		assertEquals(tenHoursInSeconds, zone.resolveUtcOffset(dateFormat
+				.parse("2150-07-01T00:00:00+0000")));
+	}
+
+	/**
+	 * Test that a zone without rules compiles to a single interval that
+	 * always applies.
+	 */
+	@Test
+	public void testCompileWithoutRules() {
+		ZoneDetail detail = new ZoneDetail();
+		final int nineHoursInSeconds = 9 * 60 * 60;
+		detail.setUtcOffset(nineHoursInSeconds);
+
+		Zone zone = new Zone();
+		zone.getDetails().add(detail);
+
+		ZoneTransitions transitions = zone.getTransitions();
+		assertEquals(1, transitions.size());
+		assertEquals(nineHoursInSeconds, transitions.getUtcOffset(0));
+		assertEquals(Long.MAX_VALUE, transitions.getHorizon());
+		assertEquals(0, transitions.indexOf(Long.MAX_VALUE));
+	}
+
+	/**
+	 * Test the compiled transitions of Europe/London against the known history
+	 * of the zone.
+	 *
+	 * @throws ParseException
+	 *             if the test is incorrectly set up.
+	 */
+	@Test
+	public void testCompileEurope() throws ParseException {
+		ZoneFactory factory = new ZoneFactory();
+		Map<String, AbstractZone> zones = new HashMap<String, AbstractZone>();
+		factory.parse(ZoneTransitionsTest.class.getResourceAsStream("europe"),
+				zones);
+
+		AbstractZone zone = zones.get("Europe/London");
+		ZoneTransitions transitions = zone.getTransitions();
+
+		// Local mean time prior to 1847.
+		final int lmtOffsetInSeconds = -75;
+		assertEquals(lmtOffsetInSeconds, transitions.getUtcOffset(0));
+
+		// British Standard Time from 1968 to 1971.
+		final int oneHourInSeconds = 1 * 60 * 60;
+		int index = transitions.indexOf(dateFormat.parse(
+				"1970-01-01T00:00:00+0000").getTime());
+		assertEquals(oneHourInSeconds, transitions.getUtcOffset(index));
+		assertEquals(0, transitions.getSave(index));
+		assertEquals("BST", transitions.getDetail(index).getFormat());
+
+		// EU rules in 2010.
+		long dstStarts = dateFormat.parse("2010-03-28T01:00:00+0000")
+				.getTime();
+		index = transitions.indexOf(dstStarts);
+		assertEquals(dstStarts, transitions.getTransition(index));
+		assertEquals(oneHourInSeconds, transitions.getUtcOffset(index));
+		assertEquals(0, transitions.getUtcOffset(index - 1));
+		assertEquals(dateFormat.parse("2010-10-31T01:00:00+0000").getTime(),
+				transitions.getTransition(index + 1));
+
+		// A link shares the compiled form of its target.
+		assertEquals(transitions, zones.get("Europe/Jersey").getTransitions());
+	}
+
+	/**
+	 * Test that finding an interval given a hint agrees with finding it
+	 * without one, whatever the hint.
+	 *
+	 * @throws ParseException
+	 *             if the test is incorrectly set up.
+	 */
+	@Test
+	public void testIndexOfWithHint() throws ParseException {
+		ZoneFactory factory = new ZoneFactory();
+		Map<String, AbstractZone> zones = new HashMap<String, AbstractZone>();
+		factory.parse(ZoneTransitionsTest.class.getResourceAsStream("europe"),
+				zones);
+
+		ZoneTransitions transitions = zones.get("Europe/London")
+				.getTransitions();
+		long[] whens = { Long.MIN_VALUE,
+				dateFormat.parse("1847-12-01T00:00:00+0000").getTime(),
+				dateFormat.parse("1970-01-01T00:00:00+0000").getTime(),
+				dateFormat.parse("2010-03-28T01:00:00+0000").getTime(),
+				dateFormat.parse("2010-03-28T01:00:00+0000").getTime() - 1,
+				transitions.getHorizon() - 1 };
+		for (long when : whens) {
+			int index = transitions.indexOf(when);
+			for (int hint = -1; hint <= transitions.size(); ++hint) {
+				assertEquals(index, transitions.indexOf(when, hint));
+			}
+		}
+	}
+}
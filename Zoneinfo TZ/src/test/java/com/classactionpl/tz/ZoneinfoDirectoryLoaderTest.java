@@ -0,0 +1,239 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.classactionpl.tz;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test out loading zones from a directory.
+ *
+ * @author huntc
+ *
+ */
+public class ZoneinfoDirectoryLoaderTest {
+
+	/**
+	 * The directory loaded from.
+	 */
+	private File directory;
+
+	/**
+	 * The zones published before the test.
+	 */
+	private Map<String, AbstractZone> previousZones;
+
+	/**
+	 * Copy a test resource into the directory.
+	 *
+	 * @param name
+	 *            the name of the resource.
+	 * @return the file copied to.
+	 * @throws IOException
+	 *             if the test is not set up correctly.
+	 */
+	private File copy(String name) throws IOException {
+		File file = new File(directory, name);
+		InputStream in = ZoneinfoDirectoryLoaderTest.class
+				.getResourceAsStream(name);
+		OutputStream out = new FileOutputStream(file);
+		try {
+			byte[] buffer = new byte[1024];
+			int read;
+			while ((read = in.read(buffer)) >= 0) {
+				out.write(buffer, 0, read);
+			}
+		} finally {
+			out.close();
+			in.close();
+		}
+		return file;
+	}
+
+	/**
+	 * Write a file of the directory.
+	 *
+	 * @param name
+	 *            the name of the file.
+	 * @param content
+	 *            the content of the file.
+	 * @return the file written.
+	 * @throws IOException
+	 *             if the test is not set up correctly.
+	 */
+	private File write(String name, String content) throws IOException {
+		File file = new File(directory, name);
+		Writer writer = new FileWriter(file);
+		try {
+			writer.write(content);
+		} finally {
+			writer.close();
+		}
+		return file;
+	}
+
+	/**
+	 * Create the directory.
+	 *
+	 * @throws IOException
+	 *             if the test is not set up correctly.
+	 */
+	@Before
+	public void setUp() throws IOException {
+		previousZones = ZoneinfoTimeZone.getZones();
+
+		directory = File.createTempFile("zoneinfo", "");
+		assertTrue(directory.delete());
+		assertTrue(directory.mkdir());
+	}
+
+	/**
+	 * Remove the directory and restore the zones.
+	 */
+	@After
+	public void tearDown() {
+		ZoneinfoTimeZone.setZones(previousZones);
+
+		for (File file : directory.listFiles()) {
+			file.delete();
+		}
+		directory.delete();
+	}
+
+	/**
+	 * Test that only changed files are parsed and that links follow the
+	 * zones that they link to.
+	 *
+	 * @throws IOException
+	 *             if the test is not set up correctly.
+	 */
+	@Test
+	public void testReload() throws IOException {
+		// The links of backward are parsed before the zones of europe.
+		copy("backward");
+		File europe = copy("europe");
+		ZoneinfoDirectoryLoader loader = new ZoneinfoDirectoryLoader(directory);
+
+		ZoneinfoDirectoryLoader.ReloadReport report = loader.reload();
+		assertEquals(Arrays.asList("backward", "europe"), report
+				.getFilesParsed());
+		AbstractZone london = ZoneinfoTimeZone.getZones().get("Europe/London");
+		assertNotNull(london);
+		assertSame(london, ZoneinfoTimeZone.getZones().get("GB")
+				.getCanonicalZone());
+
+		assertFalse(loader.reload().isChanged());
+
+		assertTrue(europe.setLastModified(europe.lastModified() + 2000));
+		report = loader.reload();
+		assertEquals(Arrays.asList("europe"), report.getFilesParsed());
+		assertTrue(report.getLinksRetargeted() > 0);
+		AbstractZone reloadedLondon = ZoneinfoTimeZone.getZones().get(
+				"Europe/London");
+		assertTrue(reloadedLondon != london);
+		assertSame(reloadedLondon, ZoneinfoTimeZone.getZones().get("GB")
+				.getCanonicalZone());
+
+		assertTrue(europe.delete());
+		report = loader.reload();
+		assertEquals(Arrays.asList("europe"), report.getFilesRemoved());
+		assertEquals(null, ZoneinfoTimeZone.getZones().get("GB"));
+	}
+
+	/**
+	 * Test that a zone may use the rules of another file, and that it is
+	 * parsed again when those rules change.
+	 *
+	 * @throws IOException
+	 *             if the test is not set up correctly.
+	 */
+	@Test
+	public void testReloadCrossFileRules() throws IOException {
+		String daylightRule = "Rule\tTR\t1971\tmax\t-\tOct\tlastSun\t2:00s\t1:00\tD\n";
+		write("rules", daylightRule
+				+ "Rule\tTR\t1972\tmax\t-\tFeb\tlastSun\t2:00s\t0\tS\n");
+		write("zones", "Zone\tTest/Zone\t10:00\tTR\tT%sT\n");
+		ZoneinfoDirectoryLoader loader = new ZoneinfoDirectoryLoader(directory);
+
+		loader.reload();
+		Zone zone = (Zone) ZoneinfoTimeZone.getZones().get("Test/Zone");
+		assertEquals(2, zone.getDetails().get(0).getRules().size());
+
+		write("rules", daylightRule);
+		ZoneinfoDirectoryLoader.ReloadReport report = loader.reload();
+		assertEquals(Arrays.asList("rules", "zones"), report.getFilesParsed());
+		Zone reloadedZone = (Zone) ZoneinfoTimeZone.getZones()
+				.get("Test/Zone");
+		assertEquals(1, reloadedZone.getDetails().get(0).getRules().size());
+		assertEquals(2, zone.getDetails().get(0).getRules().size());
+	}
+
+	/**
+	 * Reload a directory into a registry that holds zones of its own.
+	 *
+	 * @throws IOException
+	 *             if the test is not set up correctly.
+	 */
+	@Test
+	public void testReloadKeepsOtherZones() throws IOException {
+		ZoneRegistry registry = new ZoneRegistry();
+		new ZoneFactory().load(registry, new ByteArrayInputStream(
+				("Zone\tOther/Zone\t1:00\t-\tOTH\n"
+						+ "Zone\tTest/Zone\t5:00\t-\tOLD\n"
+						+ "Link\tTest/Zone\tOther/Link\n").getBytes()));
+		AbstractZone otherZone = registry.getZones().get("Other/Zone");
+		AbstractZone oldZone = registry.getZones().get("Test/Zone");
+		File zones = write("zones", "Zone\tTest/Zone\t10:00\t-\tTST\n");
+		ZoneinfoDirectoryLoader loader = new ZoneinfoDirectoryLoader(
+				directory, ZoneinfoDirectoryLoader.REGION_FILES, registry);
+
+		ZoneinfoDirectoryLoader.ReloadReport report = loader.reload();
+		assertSame(otherZone, registry.getZones().get("Other/Zone"));
+		AbstractZone zone = registry.getZones().get("Test/Zone");
+		assertFalse(zone == oldZone);
+		assertSame(zone, registry.getZones().get("Other/Link")
+				.getCanonicalZone());
+		assertEquals(1, report.getLinksRetargeted());
+
+		assertTrue(zones.delete());
+		loader.reload();
+		assertSame(otherZone, registry.getZones().get("Other/Zone"));
+		assertEquals(null, registry.getZones().get("Test/Zone"));
+		assertEquals(null, registry.getZones().get("Other/Link"));
+	}
+}
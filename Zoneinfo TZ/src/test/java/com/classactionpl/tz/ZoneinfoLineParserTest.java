@@ -0,0 +1,218 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.classactionpl.tz;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.Calendar;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.classactionpl.tz.Rule.OnType;
+import com.classactionpl.tz.Rule.TimeOfDayType;
+import com.classactionpl.tz.Rule.YearValueType;
+
+/**
+ * Test out parsing zoneinfo a line at a time.
+ * 
+ * @author huntc
+ * 
+ */
+public class ZoneinfoLineParserTest {
+
+	/** */
+	private static final int ONE_HOUR_IN_SECONDS = 60 * 60;
+
+	/**
+	 * Parse a document and link it into a set of zones.
+	 * 
+	 * @param reader
+	 *            the document.
+	 * @param zones
+	 *            the zones to append to.
+	 * @throws IOException
+	 *             if the test is not set up correctly.
+	 */
+	private void parse(Reader reader, Map<String, AbstractZone> zones)
+			throws IOException {
+		ZoneinfoLinker linker = new ZoneinfoLinker(zones);
+		linker.add(new ZoneinfoLineParser().parse(reader));
+		linker.link();
+	}
+
+	/**
+	 * Parse a test resource.
+	 * 
+	 * @param name
+	 *            the name of the resource.
+	 * @param zones
+	 *            the zones to append to.
+	 * @throws IOException
+	 *             if the test is not set up correctly.
+	 */
+	private void parse(String name, Map<String, AbstractZone> zones)
+			throws IOException {
+		parse(new InputStreamReader(ZoneinfoLineParserTest.class
+				.getResourceAsStream(name)), zones);
+	}
+
+	/**
+	 * Test parsing the European zoneinfo file.
+	 * 
+	 * @throws IOException
+	 *             if the test is not set up correctly.
+	 */
+	@Test
+	public void testParseEurope() throws IOException {
+		Map<String, AbstractZone> zones = new HashMap<String, AbstractZone>();
+		parse("europe", zones);
+
+		Zone zone = (Zone) zones.get("Europe/London");
+		List<ZoneDetail> zoneDetails = zone.getDetails();
+		final int expectedZoneDetails = 5;
+		assertEquals(expectedZoneDetails, zoneDetails.size());
+
+		ZoneDetail detail = zoneDetails.get(0);
+		assertEquals(-(60 + 15), detail.getUtcOffset());
+		assertNull(detail.getRules());
+		assertEquals("LMT", detail.getFormat());
+		assertEquals(Integer.valueOf(1847), detail.getUntil());
+		assertEquals(Integer.valueOf(Calendar.DECEMBER), detail.getUntilIn());
+		assertEquals(Integer.valueOf(1), detail.getUntilOn());
+		assertEquals(OnType.value, detail.getUntilOnType());
+		assertEquals(Integer.valueOf(0), detail.getUntilAt());
+		assertEquals(TimeOfDayType.localStandard, detail.getUntilAtType());
+
+		detail = zoneDetails.get(4);
+		List<Rule> rules = detail.getRules();
+		final int expectedEURuleCount = 6;
+		assertEquals(expectedEURuleCount, rules.size());
+		assertEquals("GMT", detail.getFormat());
+		assertEquals("BST", detail.getDstFormat());
+		assertNull(detail.getUntil());
+
+		Rule rule = rules.get(0);
+		assertEquals("EU", rule.getName());
+		assertEquals(1977, rule.getFrom());
+		assertEquals(1980, rule.getTo());
+		assertEquals(Calendar.APRIL, rule.getIn());
+		assertEquals(Calendar.SUNDAY, rule.getOn());
+		assertEquals(OnType.get, rule.getOnType());
+		assertEquals(1, rule.getOnTypeValue());
+		assertEquals(ONE_HOUR_IN_SECONDS, rule.getAt());
+		assertEquals(TimeOfDayType.universal, rule.getAtType());
+		assertEquals(ONE_HOUR_IN_SECONDS, rule.getSave());
+		assertEquals("S", rule.getLetters());
+
+		rule = rules.get(expectedEURuleCount - 1);
+		assertEquals(YearValueType.max, rule.getToType());
+		assertEquals(OnType.last, rule.getOnType());
+		assertNull(rule.getLetters());
+
+		// A fixed amount of daylight saving is in seconds.
+		detail = ((Zone) zones.get("Europe/Dublin")).getDetails().get(2);
+		assertEquals(-(25 * 60 + 21), detail.getUtcOffset());
+		assertEquals(ONE_HOUR_IN_SECONDS, detail.getSave());
+
+		Link link = (Link) zones.get("Europe/Jersey");
+		assertSame(zone, link.getTargetZone());
+	}
+
+	/**
+	 * Test that rules and zones may be referred to before they are declared.
+	 * 
+	 * @throws IOException
+	 *             if the test is not set up correctly.
+	 */
+	@Test
+	public void testForwardReferences() throws IOException {
+		String document = "Link\tTest/Zone\tTest/Link\n"
+				+ "Zone\tTest/Zone\t10:00\tTR\tT%sT\t1971 Jul\n"
+				+ "# A comment between continuation lines\n"
+				+ "\t\t\t10:00\tNONE\tTST\n"
+				+ "Rule\tTR\t1971\tmax\t-\tOct\tlastSun\t2:00s\t1:00\tD\n"
+				+ "Link\tTest/None\tTest/Dangling\n";
+		Map<String, AbstractZone> zones = new HashMap<String, AbstractZone>();
+		parse(new StringReader(document), zones);
+
+		Zone zone = (Zone) zones.get("Test/Zone");
+		List<ZoneDetail> zoneDetails = zone.getDetails();
+		assertEquals(2, zoneDetails.size());
+		assertEquals(1, zoneDetails.get(0).getRules().size());
+		assertEquals(Integer.valueOf(Calendar.JULY), zoneDetails.get(0)
+				.getUntilIn());
+		assertNull(zoneDetails.get(0).getUntilOn());
+		assertNull(zoneDetails.get(1).getRules());
+
+		assertSame(zone, zones.get("Test/Link").getCanonicalZone());
+		assertNull(zones.get("Test/Dangling"));
+	}
+
+	/**
+	 * Test that a malformed line is skipped.
+	 * 
+	 * @throws IOException
+	 *             if the test is not set up correctly.
+	 */
+	@Test
+	public void testMalformedLine() throws IOException {
+		String document = "Zone\tTest/Bad\t10:xx\t-\tTST\n"
+				+ "Zone\tTest/Good\t10:00\t-\tTST\n";
+		Map<String, AbstractZone> zones = new HashMap<String, AbstractZone>();
+		parse(new StringReader(document), zones);
+
+		assertNull(zones.get("Test/Bad"));
+		assertNotNull(zones.get("Test/Good"));
+	}
+
+	/**
+	 * Test that the entire corpus parses and compiles.
+	 * 
+	 * @throws IOException
+	 *             if the test is not set up correctly.
+	 */
+	@Test
+	public void testParseCorpus() throws IOException {
+		String[] names = { "africa", "antarctica", "asia", "australasia",
+				"europe", "northamerica", "pacificnew", "solar87", "solar88",
+				"solar89", "southamerica", "backward" };
+		Map<String, AbstractZone> zones = new HashMap<String, AbstractZone>();
+		for (String name : names) {
+			parse(name, zones);
+		}
+
+		for (AbstractZone zone : zones.values()) {
+			assertNotNull(zone.getName(), zone.getCanonicalZone());
+			assertNotNull(zone.getName(), zone.getTransitions());
+		}
+		assertSame(zones.get("America/New_York"), zones.get("US/Eastern")
+				.getCanonicalZone());
+	}
+}
@@ -0,0 +1,114 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.classactionpl.tz;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+/**
+ * Test out resolving the references between zoneinfo documents.
+ * 
+ * @author huntc
+ * 
+ */
+public class ZoneinfoLinkerTest {
+
+	/**
+	 * Parse a document without resolving its references.
+	 * 
+	 * @param document
+	 *            the document.
+	 * @return the rules, zones and links declared.
+	 * @throws IOException
+	 *             if the test is not set up correctly.
+	 */
+	private ZoneinfoDocument parse(String document) throws IOException {
+		return new ZoneinfoLineParser().parse(new StringReader(document));
+	}
+
+	/**
+	 * Test that links, including chains of links, resolve whatever the order
+	 * in which they and their zones are declared.
+	 * 
+	 * @throws IOException
+	 *             if the test is not set up correctly.
+	 */
+	@Test
+	public void testLinkChains() throws IOException {
+		Map<String, AbstractZone> zones = new HashMap<String, AbstractZone>();
+		ZoneinfoLinker linker = new ZoneinfoLinker(zones);
+		linker.add(parse("Link\tTest/Middle\tTest/Last\n"
+				+ "Link\tTest/First\tTest/Middle\n"));
+		linker.add(parse("Zone\tTest/Zone\t10:00\tTR\tT%sT\n"
+				+ "Link\tTest/Zone\tTest/First\n"));
+		linker.add(parse("Rule\tTR\t1971\tmax\t-\tOct\tlastSun\t2:00s\t1:00\tD\n"));
+		ZoneinfoLinker.Report report = linker.link();
+
+		assertTrue(report.isResolved());
+		Zone zone = (Zone) zones.get("Test/Zone");
+		assertEquals(1, zone.getDetails().get(0).getRules().size());
+		assertSame(zone, ((Link) zones.get("Test/First")).getTargetZone());
+		assertSame(zone, ((Link) zones.get("Test/Middle")).getTargetZone());
+		assertSame(zone, ((Link) zones.get("Test/Last")).getTargetZone());
+	}
+
+	/**
+	 * Test that references that cannot be resolved are reported.
+	 * 
+	 * @throws IOException
+	 *             if the test is not set up correctly.
+	 */
+	@Test
+	public void testUnresolved() throws IOException {
+		Map<String, AbstractZone> zones = new HashMap<String, AbstractZone>();
+		ZoneinfoLinker linker = new ZoneinfoLinker(zones);
+		linker.add(parse("Zone\tTest/Zone\t10:00\tNONE\tT%sT\n"
+				+ "Link\tTest/None\tTest/Dangling\n"
+				+ "Link\tTest/Dangling\tTest/AlsoDangling\n"
+				+ "Link\tTest/Cycle\tTest/Cycle\n"));
+		ZoneinfoLinker.Report report = linker.link();
+
+		assertFalse(report.isResolved());
+		assertEquals(Collections.singleton("NONE"), report
+				.getUnresolvedRuleNames());
+		Map<String, String> unresolvedLinks = report.getUnresolvedLinks();
+		assertEquals(3, unresolvedLinks.size());
+		assertEquals("Test/None", unresolvedLinks.get("Test/Dangling"));
+		assertEquals("Test/Dangling", unresolvedLinks.get("Test/AlsoDangling"));
+		assertEquals("Test/Cycle", unresolvedLinks.get("Test/Cycle"));
+
+		assertNull(((Zone) zones.get("Test/Zone")).getDetails().get(0)
+				.getRules());
+		assertNull(zones.get("Test/Dangling"));
+		assertNull(zones.get("Test/AlsoDangling"));
+		assertNull(zones.get("Test/Cycle"));
+	}
+}
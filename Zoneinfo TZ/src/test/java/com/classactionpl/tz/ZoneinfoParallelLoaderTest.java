@@ -0,0 +1,206 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.classactionpl.tz;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Writer;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.Test;
+
+/**
+ * Test out loading zoneinfo documents in parallel.
+ * 
+ * @author huntc
+ * 
+ */
+public class ZoneinfoParallelLoaderTest {
+
+	/**
+	 * The zoneinfo files of the corpus, in the order that they are loaded.
+	 */
+	private static final String[] CORPUS = { "africa", "antarctica", "asia",
+			"australasia", "europe", "northamerica", "pacificnew", "solar87",
+			"solar88", "solar89", "southamerica", "backward" };
+
+	/**
+	 * Write a document to a temporary file.
+	 * 
+	 * @param document
+	 *            the document.
+	 * @return the file.
+	 * @throws IOException
+	 *             if the test is not set up correctly.
+	 */
+	private File write(String document) throws IOException {
+		File file = File.createTempFile("zoneinfo", "");
+		file.deleteOnExit();
+		Writer writer = new FileWriter(file);
+		try {
+			writer.write(document);
+		} finally {
+			writer.close();
+		}
+		return file;
+	}
+
+	/**
+	 * Test that loading the corpus in parallel yields the same zones as
+	 * loading it one file after another.
+	 * 
+	 * @throws IOException
+	 *             if the test is not set up correctly.
+	 * @throws InterruptedException
+	 *             if the test is interrupted.
+	 */
+	@Test
+	public void testLoadCorpus() throws IOException,
+			InterruptedException {
+		List<URL> documents = new ArrayList<URL>();
+		Map<String, AbstractZone> expectedZones = new HashMap<String, AbstractZone>();
+		for (String name : CORPUS) {
+			documents.add(ZoneinfoParallelLoaderTest.class.getResource(name));
+
+			ZoneinfoLinker linker = new ZoneinfoLinker(expectedZones);
+			linker.add(new ZoneinfoLineParser().parse(new InputStreamReader(
+					ZoneinfoParallelLoaderTest.class.getResourceAsStream(name))));
+			linker.link();
+		}
+
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		Map<String, AbstractZone> zones = new HashMap<String, AbstractZone>();
+		try {
+			new ZoneinfoParallelLoader(executor).load(documents, zones);
+		} finally {
+			executor.shutdown();
+		}
+
+		assertEquals(expectedZones.keySet(), zones.keySet());
+		final long when = 1262304000000L; // 2010-01-01T00:00:00Z
+		for (Map.Entry<String, AbstractZone> entry : expectedZones.entrySet()) {
+			AbstractZone zone = zones.get(entry.getKey());
+			assertEquals(entry.getKey(), entry.getValue().getCanonicalZone()
+					.getName(), zone.getCanonicalZone().getName());
+			assertEquals(entry.getKey(), entry.getValue().resolveUtcOffset(
+					when), zone.resolveUtcOffset(when));
+		}
+		assertSame(zones.get("America/New_York"), zones.get("US/Eastern")
+				.getCanonicalZone());
+	}
+
+	/**
+	 * Test that a zone may use the rules of another document and that a link
+	 * may be to a zone of another document, whatever the order of the
+	 * documents.
+	 * 
+	 * @throws IOException
+	 *             if the test is not set up correctly.
+	 * @throws InterruptedException
+	 *             if the test is interrupted.
+	 */
+	@Test
+	public void testCrossDocumentReferences() throws IOException,
+			InterruptedException {
+		File links = write("Link\tTest/Zone\tTest/Link\n");
+		File zone = write("Zone\tTest/Zone\t10:00\tTR\tT%sT\n");
+		File rules = write("Rule\tTR\t1971\tmax\t-\tOct\tlastSun\t2:00s\t1:00\tD\n"
+				+ "Rule\tTR\t1972\tmax\t-\tFeb\tlastSun\t2:00s\t0\tS\n");
+
+		ZoneRegistry registry = new ZoneRegistry();
+		new ZoneinfoParallelLoader().load(registry, Arrays.asList(links
+				.toURI().toURL(), zone.toURI().toURL(), rules.toURI().toURL()));
+
+		Map<String, AbstractZone> zones = registry.getZones();
+		Zone testZone = (Zone) zones.get("Test/Zone");
+		assertNotNull(testZone);
+		assertEquals(2, testZone.getDetails().get(0).getRules().size());
+		assertSame(testZone, zones.get("Test/Link").getCanonicalZone());
+		assertTrue(registry.getTimeZone("Test/Link").useDaylightTime());
+	}
+
+	/**
+	 * Test that links of the registry follow the zone that they link to when
+	 * it is reloaded from another document.
+	 * 
+	 * @throws IOException
+	 *             if the test is not set up correctly.
+	 * @throws InterruptedException
+	 *             if the test is interrupted.
+	 */
+	@Test
+	public void testReloadRetargetsLinks() throws IOException,
+			InterruptedException {
+		File zone = write("Zone\tFoo/Bar\t1:00\t-\tFOO\n");
+		File link = write("Link\tFoo/Bar\tBaz\n");
+		ZoneRegistry registry = new ZoneRegistry();
+		ZoneinfoParallelLoader loader = new ZoneinfoParallelLoader();
+		loader.load(registry, Arrays.asList(zone.toURI().toURL(), link
+				.toURI().toURL()));
+
+		File reloadedZone = write("Zone\tFoo/Bar\t2:00\t-\tFOO\n");
+		loader.load(registry, Arrays.asList(reloadedZone.toURI().toURL()));
+
+		final int twoHoursInMillis = 2 * 60 * 60 * 1000;
+		assertEquals(twoHoursInMillis, registry.getTimeZone("Baz")
+				.getOffset(0));
+		assertSame(registry.getZones().get("Foo/Bar"), registry.getZones()
+				.get("Baz").getCanonicalZone());
+	}
+
+	/**
+	 * Test that nothing is published when a load is interrupted.
+	 * 
+	 * @throws IOException
+	 *             if the test is not set up correctly.
+	 */
+	@Test
+	public void testInterrupted() throws IOException {
+		File zone = write("Zone\tTest/Zone\t10:00\t-\tTST\n");
+		ZoneRegistry registry = new ZoneRegistry();
+
+		Thread.currentThread().interrupt();
+		try {
+			new ZoneinfoParallelLoader().load(registry, Arrays.asList(zone
+					.toURI().toURL()));
+			fail("The load should have been interrupted.");
+		} catch (InterruptedException e) {
+			// Expected.
+		}
+		assertFalse(Thread.interrupted());
+		assertTrue(registry.getZones().isEmpty());
+	}
+}
@@ -21,12 +21,17 @@ package com.classactionpl.tz;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
+import java.util.Arrays;
 import java.util.Calendar;
 import java.util.GregorianCalendar;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.TimeZone;
 
@@ -103,6 +108,36 @@ public class ZoneinfoTimeZoneTest {
 
 	}
 
+	/**
+	 * Test that the abbreviation in use is returned for a given time.
+	 * 
+	 * @throws ParseException
+	 *             if the test is not set up correctly.
+	 */
+	@Test
+	public void testGetAbbreviation() throws ParseException {
+		ZoneinfoTimeZone tz;
+
+		tz = (ZoneinfoTimeZone) ZoneinfoTimeZone.getTimeZone("Europe/London");
+
+		long dstStarts = dateFormat.parse("2010-03-28T01:00:00+0000")
+				.getTime();
+		assertEquals("GMT", tz.getAbbreviation(dstStarts - 1));
+		assertEquals("BST", tz.getAbbreviation(dstStarts));
+
+		// Before the rules, local mean time applied.
+		assertEquals("LMT", tz.getAbbreviation(dateFormat.parse(
+				"1800-01-01T00:00:00+0000").getTime()));
+
+		tz = (ZoneinfoTimeZone) ZoneinfoTimeZone
+				.getTimeZone("Europe/Andorra");
+
+		assertEquals("CEST", tz.getAbbreviation(dateFormat.parse(
+				"2010-07-01T00:00:00+0000").getTime()));
+		assertEquals("CET", tz.getAbbreviation(dateFormat.parse(
+				"2150-01-01T00:00:00+0000").getTime()));
+	}
+
 	/**
 	 * Test that all of the time zones we expect are read in.
 	 */
@@ -112,6 +147,36 @@ public class ZoneinfoTimeZoneTest {
 		assertEquals(expectedIdLen, ZoneinfoTimeZone.getAvailableIDs().length);
 	}
 
+	/**
+	 * Test that the ids are sorted and shared until the zones change.
+	 */
+	@Test
+	public void testGetAvailableIDsVersion() {
+		long version = ZoneinfoTimeZone.getAvailableIDsVersion();
+		List<String> ids = ZoneinfoTimeZone.getAvailableIDList();
+		assertSame(ids, ZoneinfoTimeZone.getAvailableIDList());
+		assertEquals(version, ZoneinfoTimeZone.getAvailableIDsVersion());
+
+		String[] sortedIds = ZoneinfoTimeZone.getAvailableIDs();
+		assertEquals(ids, Arrays.asList(sortedIds));
+		Arrays.sort(sortedIds);
+		assertEquals(ids, Arrays.asList(sortedIds));
+
+		Zone zone = new Zone();
+		zone.setName("Test/Version");
+		Map<String, AbstractZone> zones = ZoneinfoTimeZone.getZones();
+		zones.put(zone.getName(), zone);
+		try {
+			assertTrue(ZoneinfoTimeZone.getAvailableIDsVersion() != version);
+			assertTrue(ZoneinfoTimeZone.getAvailableIDList().contains(
+					"Test/Version"));
+		} finally {
+			zones.remove(zone.getName());
+		}
+		assertFalse(ZoneinfoTimeZone.getAvailableIDList().contains(
+				"Test/Version"));
+	}
+
 	/**
 	 * Test obtaining all time zones that sit +10 UTC.
 	 */
@@ -123,6 +188,63 @@ public class ZoneinfoTimeZoneTest {
 				ZoneinfoTimeZone.getAvailableIDs(utc10millis).length);
 	}
 
+	/**
+	 * Test that the ids for an offset reflect changes to the zones.
+	 */
+	@Test
+	public void testGetAvailableIDsForOffsetAfterChange() {
+		final int utcOffset = 10 * 60 * 60 + 7 * 60;
+		final int utcOffsetMillis = utcOffset * 1000;
+		assertEquals(0, ZoneinfoTimeZone.getAvailableIDs(utcOffsetMillis).length);
+
+		Zone zone = new Zone();
+		zone.setName("Test/Offset");
+		ZoneDetail detail = new ZoneDetail();
+		detail.setUtcOffset(utcOffset);
+		zone.getDetails().add(detail);
+
+		Map<String, AbstractZone> zones = ZoneinfoTimeZone.getZones();
+		zones.put(zone.getName(), zone);
+		try {
+			assertTrue(Arrays.equals(new String[] { "Test/Offset" },
+					ZoneinfoTimeZone.getAvailableIDs(utcOffsetMillis)));
+		} finally {
+			zones.remove(zone.getName());
+		}
+		assertEquals(0, ZoneinfoTimeZone.getAvailableIDs(utcOffsetMillis).length);
+	}
+
+	/**
+	 * Test fingerprinting the offsets of zones.
+	 * 
+	 * @throws ParseException
+	 *             if the test is bad.
+	 */
+	@Test
+	public void testGetFingerprint() throws ParseException {
+		ZoneinfoTimeZone tirane = (ZoneinfoTimeZone) ZoneinfoTimeZone
+				.getTimeZone("Europe/Tirane");
+		ZoneinfoTimeZone andorra = (ZoneinfoTimeZone) ZoneinfoTimeZone
+				.getTimeZone("Europe/Andorra");
+
+		// Their histories differ but both have followed EU rules since 1985.
+		assertFalse(tirane.getFingerprint() == andorra.getFingerprint());
+		long from = dateFormat.parse("1990-01-01T00:00:00+0000").getTime();
+		long to = dateFormat.parse("2030-01-01T00:00:00+0000").getTime();
+		assertEquals(tirane.getFingerprint(from, to), andorra.getFingerprint(
+				from, to));
+
+		// A link has the same fingerprint as its target.
+		ZoneinfoTimeZone london = (ZoneinfoTimeZone) ZoneinfoTimeZone
+				.getTimeZone("Europe/London");
+		ZoneinfoTimeZone jersey = (ZoneinfoTimeZone) ZoneinfoTimeZone
+				.getTimeZone("Europe/Jersey");
+		assertEquals(london.getFingerprint(), jersey.getFingerprint());
+
+		assertFalse(london.getFingerprint(from, to) == andorra.getFingerprint(
+				from, to));
+	}
+
 	/**
 	 * Test that the correct display name is returned for a given zone across
 	 * DST boundaries.
@@ -179,6 +301,86 @@ public class ZoneinfoTimeZoneTest {
 		assertEquals("Europe/Vatican", tz.getID());
 	}
 
+	/**
+	 * Test that time zones are shared between callers, that setting the id
+	 * of one is harmless and that they must be cloned before associating
+	 * another zone.
+	 */
+	@Test
+	public void testGetTimeZoneShared() {
+		TimeZone tz = ZoneinfoTimeZone.getTimeZone("Europe/London");
+		assertSame(tz, ZoneinfoTimeZone.getTimeZone("Europe/London"));
+		assertSame(tz, ZoneinfoTimeZone.getTimeZone(new StringBuilder(
+				"Europe/London")));
+		assertEquals(null, ZoneinfoTimeZone.getTimeZone(new StringBuilder(
+				"Europe/Lond")));
+
+		tz.setID("Europe/Paris");
+		assertEquals("Europe/London", tz.getID());
+
+		AbstractZone paris = ZoneinfoTimeZone.getZones().get("Europe/Paris");
+		try {
+			((ZoneinfoTimeZone) tz).setZone(paris);
+			fail("A shared time zone should not be changed.");
+		} catch (UnsupportedOperationException e) {
+			// Expected.
+		}
+
+		ZoneinfoTimeZone clonedTz = (ZoneinfoTimeZone) tz.clone();
+		clonedTz.setZone(paris);
+		assertEquals("Europe/Paris", clonedTz.getID());
+		assertEquals("Europe/London", tz.getID());
+	}
+
+	/**
+	 * Test publishing a new set of zones in place of the current ones.
+	 */
+	@Test
+	public void testSetZones() {
+		Map<String, AbstractZone> previousZones = ZoneinfoTimeZone.getZones();
+		long version = ZoneinfoTimeZone.getAvailableIDsVersion();
+
+		Zone zone = new Zone();
+		zone.setName("Test/Published");
+		ZoneDetail detail = new ZoneDetail();
+		zone.getDetails().add(detail);
+		Map<String, AbstractZone> zones = new HashMap<String, AbstractZone>(
+				previousZones);
+		zones.put(zone.getName(), zone);
+
+		ZoneinfoTimeZone.setZones(zones);
+		try {
+			assertTrue(ZoneinfoTimeZone.getAvailableIDsVersion() != version);
+			assertEquals("Test/Published", ZoneinfoTimeZone.getTimeZone(
+					"Test/Published").getID());
+
+			// The zones published are a copy.
+			zones.remove(zone.getName());
+			assertEquals("Test/Published", ZoneinfoTimeZone.getTimeZone(
+					"Test/Published").getID());
+		} finally {
+			ZoneinfoTimeZone.setZones(previousZones);
+		}
+		assertEquals(null, ZoneinfoTimeZone.getTimeZone("Test/Published"));
+	}
+
+	/**
+	 * Test that a link shares the compiled form of the zone it links to.
+	 */
+	@Test
+	public void testGetTimeZoneForLink() {
+		ZoneinfoTimeZone link = (ZoneinfoTimeZone) ZoneinfoTimeZone
+				.getTimeZone("US/Eastern");
+		ZoneinfoTimeZone zone = (ZoneinfoTimeZone) ZoneinfoTimeZone
+				.getTimeZone("America/New_York");
+
+		assertEquals("US/Eastern", link.getID());
+		assertSame(zone.getZone(), link.getZone().getCanonicalZone());
+		assertSame(zone.getZone().getTransitions(), link.getZone()
+				.getTransitions());
+		assertEquals(zone.getOffset(0L), link.getOffset(0L));
+	}
+
 	/**
 	 * Test returning the correct offset.
 	 * 
@@ -222,6 +424,125 @@ public class ZoneinfoTimeZoneTest {
 
 	}
 
+	/**
+	 * Test returning the offset given calendar fields that are out of their
+	 * normal ranges, or before Christ.
+	 */
+	@Test
+	public void testGetOffsetFields() {
+		TimeZone tz;
+
+		tz = ZoneinfoTimeZone.getTimeZone("Australia/Sydney");
+
+		final int oneHourInMillis = 1 * 60 * 60 * 1000;
+		final int tenHoursInMillis = 10 * oneHourInMillis;
+		final int elevenHoursInMillis = 11 * oneHourInMillis;
+
+		// The 33rd of March 2010 is the 2nd of April, the 15th month of 2009
+		// is March 2010.
+		final int testYear = 2010;
+		final int thirtyThirdDay = 33;
+		final int fifteenthMonth = 14;
+		final int dstTestDayOffsetInMillis = 15 * oneHourInMillis;
+		assertEquals(elevenHoursInMillis, tz.getOffset(GregorianCalendar.AD,
+				testYear, Calendar.MARCH, thirtyThirdDay, Calendar.FRIDAY,
+				dstTestDayOffsetInMillis));
+		assertEquals(elevenHoursInMillis, tz.getOffset(GregorianCalendar.AD,
+				testYear - 1, fifteenthMonth, 1, Calendar.MONDAY,
+				dstTestDayOffsetInMillis));
+
+		// Local mean time applied back then.
+		final int bcYear = 44;
+		final int lmtOffsetInMillis = (10 * 60 * 60 + 4 * 60 + 52) * 1000;
+		assertEquals(lmtOffsetInMillis, tz.getOffset(GregorianCalendar.BC,
+				bcYear, Calendar.MARCH, 1, Calendar.SUNDAY, 0));
+
+		assertEquals(tenHoursInMillis, tz.getOffset(GregorianCalendar.AD,
+				testYear, Calendar.JULY, 1, Calendar.THURSDAY, 0));
+	}
+
+	/**
+	 * Test that offsets within the interval of the previous lookup are
+	 * answered from it, and that those outside of it are not.
+	 * 
+	 * @throws ParseException
+	 *             if the test is not set up correctly.
+	 */
+	@Test
+	public void testGetOffsetCache() throws ParseException {
+		// The shared time zone may have been used by other tests.
+		ZoneinfoTimeZone tz = (ZoneinfoTimeZone) ZoneinfoTimeZone.getTimeZone(
+				"Australia/Sydney").clone();
+		tz.setOffsetCacheCounting(true);
+
+		final int oneHourInMillis = 1 * 60 * 60 * 1000;
+		final int tenHoursInMillis = 10 * oneHourInMillis;
+		final int elevenHoursInMillis = 11 * oneHourInMillis;
+
+		long dstEnds = dateFormat.parse("2010-04-03T16:00:00+0000").getTime();
+
+		assertEquals(elevenHoursInMillis, tz.getOffset(dstEnds - 1));
+		assertEquals(0, tz.getOffsetCacheHits());
+		assertEquals(1, tz.getOffsetCacheMisses());
+
+		assertEquals(elevenHoursInMillis, tz.getOffset(dstEnds
+				- oneHourInMillis));
+		assertEquals(1, tz.getOffsetCacheHits());
+		assertEquals(1, tz.getOffsetCacheMisses());
+
+		assertEquals(tenHoursInMillis, tz.getOffset(dstEnds));
+		assertEquals(1, tz.getOffsetCacheHits());
+		assertEquals(2, tz.getOffsetCacheMisses());
+
+		assertEquals(tenHoursInMillis, tz.getOffset(dstEnds + 1));
+		assertEquals(2, tz.getOffsetCacheHits());
+		assertEquals(2, tz.getOffsetCacheMisses());
+	}
+
+	/**
+	 * Test returning the offsets of a batch of times, sorted and otherwise.
+	 * 
+	 * @throws ParseException
+	 *             if the test is not set up correctly.
+	 */
+	@Test
+	public void testGetOffsets() throws ParseException {
+		ZoneinfoTimeZone tz = (ZoneinfoTimeZone) ZoneinfoTimeZone
+				.getTimeZone("Europe/London");
+
+		final int count = 1000;
+		final long step = 7 * 24 * 60 * 60 * 1000L + 1;
+		long[] sorted = new long[count];
+		long[] reversed = new long[count];
+		long when = dateFormat.parse("1960-01-01T00:00:00+0000").getTime();
+		for (int i = 0; i < count; ++i) {
+			sorted[i] = when;
+			reversed[count - i - 1] = when;
+			when += step;
+		}
+
+		int[] offsets = new int[count];
+		tz.getOffsets(sorted, 0, count, offsets);
+		for (int i = 0; i < count; ++i) {
+			assertEquals(tz.getOffset(sorted[i]), offsets[i]);
+		}
+
+		tz.getOffsets(reversed, 0, count, offsets);
+		for (int i = 0; i < count; ++i) {
+			assertEquals(tz.getOffset(reversed[i]), offsets[i]);
+		}
+
+		// Only the range requested is written.
+		final int from = 10;
+		final int len = 5;
+		final int unwritten = -1;
+		Arrays.fill(offsets, unwritten);
+		tz.getOffsets(sorted, from, len, offsets);
+		assertEquals(unwritten, offsets[from - 1]);
+		assertEquals(tz.getOffset(sorted[from]), offsets[from]);
+		assertEquals(unwritten, offsets[from + len]);
+	}
+
 	/**
 	 * Test getting the raw offset.
 	 */
@@ -251,6 +572,12 @@ public class ZoneinfoTimeZoneTest {
 		assertTrue(ZoneinfoTimeZone.getTimeZone("Europe/Tirane").hasSameRules(
 				ZoneinfoTimeZone.getTimeZone("Europe/Andorra")));
 
+		// Compare two zones with different rule objects that are in effect
+		// the same.
+		assertTrue(ZoneinfoTimeZone.getTimeZone("Australia/Sydney")
+				.hasSameRules(
+						ZoneinfoTimeZone.getTimeZone("Australia/Melbourne")));
+
 		// Compare two zones with different rule objects.
 		assertFalse(ZoneinfoTimeZone.getTimeZone("Australia/Sydney")
 				.hasSameRules(ZoneinfoTimeZone.getTimeZone("Europe/Andorra")));